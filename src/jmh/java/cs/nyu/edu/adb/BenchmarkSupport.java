@@ -0,0 +1,67 @@
+package cs.nyu.edu.adb;
+
+import java.util.List;
+
+public class BenchmarkSupport {
+
+  /**
+   * Create a transaction manager for the default topology which drops its output messages,
+   * so benchmarks measure the engine instead of I/O
+   * @return a new transaction manager
+   */
+  public static TransactionManager newTransactionManager() {
+    return newTransactionManager(new EngineConfig.Builder().build());
+  }
+
+  /**
+   * Create a transaction manager for the default topology which drops its output messages
+   * @param config giving how the engine runs
+   * @return a new transaction manager
+   */
+  public static TransactionManager newTransactionManager(EngineConfig config) {
+    return new TransactionManager(new Topology.Builder().build(), config,
+        new DiscardingOutputSink());
+  }
+
+  /**
+   * Execute operations one by one on a transaction manager
+   * @param transactionManager given to execute operations
+   * @param operations given to execute
+   */
+  public static void execute(TransactionManager transactionManager, List<Operation> operations) {
+    for(Operation operation : operations) {
+      transactionManager.executeOperation(operation);
+    }
+  }
+
+  public static Operation begin(int transaction) {
+    return new Operation.Builder(OperationType.BEGIN).transaction("T" + transaction).build();
+  }
+
+  public static Operation end(int transaction) {
+    return new Operation.Builder(OperationType.END).transaction("T" + transaction).build();
+  }
+
+  public static Operation read(int transaction, int variable) {
+    return new Operation.Builder(OperationType.READ)
+        .transaction("T" + transaction)
+        .variable(variable)
+        .build();
+  }
+
+  public static Operation write(int transaction, int variable, int value) {
+    return new Operation.Builder(OperationType.WRITE)
+        .transaction("T" + transaction)
+        .variable(variable)
+        .writesToValue(value)
+        .build();
+  }
+
+  public static Operation fail(int site) {
+    return new Operation.Builder(OperationType.FAIL).site(site).build();
+  }
+
+  public static Operation recover(int site) {
+    return new Operation.Builder(OperationType.RECOVER).site(site).build();
+  }
+}
@@ -0,0 +1,59 @@
+package cs.nyu.edu.adb;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays of the same synthetic workloads under locking and optimistic concurrency control,
+ * reported as operations executed per second together with the commits and aborts per second
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrencyControlBenchmark {
+
+  private static final int TRANSACTIONS = 2000;
+  private static final int CONCURRENCY = 8;
+  private static final int OPERATIONS_PER_TRANSACTION = 6;
+
+  @Param({"2pl", "occ"})
+  public String concurrencyControl;
+
+  @Param({"UNIFORM", "CONTENTION"})
+  public WorkloadGenerator.Workload workload;
+
+  private EngineConfig config;
+  private List<Operation> workloadOperations;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    config = new EngineConfig.Builder()
+        .concurrencyControl(ConcurrencyControl.fromName(concurrencyControl))
+        .build();
+    workloadOperations = new WorkloadGenerator(42, new Topology.Builder().build())
+        .generate(workload, TRANSACTIONS, CONCURRENCY, OPERATIONS_PER_TRANSACTION);
+  }
+
+  @Benchmark
+  public void replayWorkload(OperationCounter counter, TransactionOutcomeCounter outcomes) {
+    TransactionManager transactionManager = BenchmarkSupport.newTransactionManager(config);
+    transactionManager.setTransactionListener(outcomes);
+    BenchmarkSupport.execute(transactionManager, workloadOperations);
+    counter.operations += workloadOperations.size();
+  }
+}
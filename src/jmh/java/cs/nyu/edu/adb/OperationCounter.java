@@ -0,0 +1,23 @@
+package cs.nyu.edu.adb;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts operations executed by a benchmark invocation, so JMH reports operations per second
+ * for replays whose length is only known at runtime
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class OperationCounter {
+
+  public long operations;
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    operations = 0;
+  }
+}
@@ -0,0 +1,75 @@
+package cs.nyu.edu.adb;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads and writes dispatched by TransactionManager.executeOperation, on operations parsed once
+ * One transaction reads replicated and unreplicated variables, another one writes different
+ * ones, so every operation is granted at once and the locks they take are already held after
+ * the first invocation. Run with the gc profiler, gc.alloc.rate.norm should stay at 0 B/op
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperationDispatchBenchmark {
+
+  // large enough that boxing them would allocate
+  private static final int READER = 1001;
+  private static final int WRITER = 1002;
+  // the reader reads x1 to x10, the writer writes x11 to x20
+  private static final int VARIABLES_PER_TRANSACTION = 10;
+
+  private TransactionManager transactionManager;
+  private Operation[] reads;
+  private Operation[] writes;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    transactionManager = BenchmarkSupport.newTransactionManager();
+    transactionManager.executeOperation(BenchmarkSupport.begin(READER));
+    transactionManager.executeOperation(BenchmarkSupport.begin(WRITER));
+    reads = new Operation[VARIABLES_PER_TRANSACTION];
+    writes = new Operation[VARIABLES_PER_TRANSACTION];
+    for(int i = 0; i < VARIABLES_PER_TRANSACTION; i++) {
+      reads[i] = BenchmarkSupport.read(READER, i + 1);
+      writes[i] = BenchmarkSupport.write(WRITER, VARIABLES_PER_TRANSACTION + i + 1, 1000 + i);
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    transactionManager.shutdown();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(VARIABLES_PER_TRANSACTION)
+  public void read() {
+    for(Operation operation : reads) {
+      transactionManager.executeOperation(operation);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(VARIABLES_PER_TRANSACTION)
+  public void write() {
+    for(Operation operation : writes) {
+      transactionManager.executeOperation(operation);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package cs.nyu.edu.adb;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of parsing operations, reported as operations parsed per second
+ * The split benchmarks parse lines the way input files were parsed before OperationScanner,
+ * so they give the baseline the scanner is compared with
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+  private static final int TRANSACTIONS = 10000;
+  private static final int OPERATIONS_PER_TRANSACTION = 8;
+  // begin and end of each transaction, plus its reads and writes
+  private static final int OPERATIONS = TRANSACTIONS * (OPERATIONS_PER_TRANSACTION + 2);
+
+  private String trace;
+  private byte[] traceBytes;
+  private Path traceFile;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    List<Operation> operations = new WorkloadGenerator(42, new Topology.Builder().build())
+        .generate(WorkloadGenerator.Workload.UNIFORM, TRANSACTIONS, 8, OPERATIONS_PER_TRANSACTION);
+    StringBuilder stringBuilder = new StringBuilder();
+    operations.forEach(operation -> stringBuilder.append(format(operation)).append('\n'));
+    trace = stringBuilder.toString();
+    traceBytes = trace.getBytes(StandardCharsets.UTF_8);
+    traceFile = Files.createTempFile("parse-benchmark", ".txt");
+    Files.write(traceFile, traceBytes);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(traceFile);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public void scanFromMemory(Blackhole blackhole) throws IOException {
+    try(OperationScanner scanner = new OperationScanner(new ByteArrayInputStream(traceBytes))) {
+      while(scanner.hasNext()) {
+        blackhole.consume(scanner.next());
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public void parseOperationsFromFile(Blackhole blackhole) throws IOException {
+    try(Stream<Operation> operations = IOUtils.parseOperations(traceFile.toString())) {
+      operations.forEach(blackhole::consume);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public void splitFromMemory(Blackhole blackhole) {
+    new BufferedReader(new StringReader(trace)).lines()
+        .map(ParseBenchmark::parseLineWithSplit)
+        .forEach(blackhole::consume);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(OPERATIONS)
+  public void splitFromFile(Blackhole blackhole) throws IOException {
+    try(Stream<String> lines = Files.lines(traceFile)) {
+      lines.filter(line -> !line.startsWith("//"))
+          .map(ParseBenchmark::parseLineWithSplit)
+          .forEach(blackhole::consume);
+    }
+  }
+
+  /**
+   * Parse one line by splitting it with a regex, like input files were parsed before
+   * @param line given to parse
+   * @return the operation on this line
+   */
+  private static Operation parseLineWithSplit(String line) {
+    String[] separateStrings = line.trim().split("\\(|\\)|,");
+    OperationType type = OperationType.fromName(separateStrings[0].trim());
+    Operation.Builder builder = new Operation.Builder(type);
+    switch (type) {
+      case BEGIN:
+      case BEGIN_RO:
+      case END:
+        builder.transaction(separateStrings[1].trim());
+        break;
+      case READ:
+        builder.transaction(separateStrings[1].trim())
+            .variable(Integer.valueOf(separateStrings[2].trim().substring(1)));
+        break;
+      case WRITE:
+        builder.transaction(separateStrings[1].trim())
+            .variable(Integer.valueOf(separateStrings[2].trim().substring(1)))
+            .writesToValue(Integer.valueOf(separateStrings[3].trim()));
+        break;
+      case FAIL:
+      case RECOVER:
+        builder.site(Integer.valueOf(separateStrings[1].trim()));
+        break;
+      default:
+        break;
+    }
+    return builder.build();
+  }
+
+  /**
+   * Format an operation the way it's written in input files
+   * @param operation given to format
+   * @return one line of an input file
+   */
+  private static String format(Operation operation) {
+    switch (operation.getType()) {
+      case READ:
+        return String.format("R(%s,x%s)", operation.getTransaction(), operation.getVariable());
+      case WRITE:
+        return String.format("W(%s,x%s,%s)", operation.getTransaction(),
+            operation.getVariable(), operation.getWritesToValue());
+      case FAIL:
+      case RECOVER:
+        return String.format("%s(%s)", operation.getName(), operation.getSite());
+      case DUMP:
+        return "dump()";
+      default:
+        return String.format("%s(%s)", operation.getName(), operation.getTransaction());
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package cs.nyu.edu.adb;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end replays of the traces under TestInput, parsing included,
+ * reported as operations executed per second
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplayBenchmark {
+
+  @Param({"test1", "test2", "test3", "test4", "test5", "test6",
+      "test7", "test8", "test9", "test10", "test11"})
+  public String testInput;
+
+  @Benchmark
+  public void replayTestInput(OperationCounter counter) throws IOException {
+    String inputFile = String.format("%s/TestInput/%s.txt",
+        System.getProperty(IOUtils.USER_DIR), testInput);
+    TransactionManager transactionManager = BenchmarkSupport.newTransactionManager();
+    try(Stream<Operation> operations = IOUtils.parseOperations(inputFile)) {
+      transactionManager.run(operations.peek(operation -> counter.operations++));
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package cs.nyu.edu.adb;
+
+import static cs.nyu.edu.adb.BenchmarkSupport.begin;
+import static cs.nyu.edu.adb.BenchmarkSupport.end;
+import static cs.nyu.edu.adb.BenchmarkSupport.fail;
+import static cs.nyu.edu.adb.BenchmarkSupport.recover;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the hot paths of TransactionManager with the default topology
+ * Every benchmark method is one invocation of the named path, operations are built up front
+ * where they could be reused
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionManagerBenchmark {
+
+  /**
+   * One active transaction which reads and writes all variables over and over
+   */
+  @State(Scope.Thread)
+  public static class ActiveTransaction {
+
+    TransactionManager transactionManager;
+    Operation[] reads;
+    Operation[] writes;
+    int cursor;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      transactionManager = BenchmarkSupport.newTransactionManager();
+      transactionManager.executeOperation(begin(1));
+      int variableCount = Topology.DEFAULT_VARIABLE_COUNT;
+      reads = new Operation[variableCount];
+      writes = new Operation[variableCount];
+      for(int i = 0; i < variableCount; i++) {
+        reads[i] = BenchmarkSupport.read(1, i + 1);
+        writes[i] = BenchmarkSupport.write(1, i + 1, i);
+      }
+      cursor = 0;
+    }
+
+    Operation nextRead() {
+      cursor = (cursor + 1) % reads.length;
+      return reads[cursor];
+    }
+
+    Operation nextWrite() {
+      cursor = (cursor + 1) % writes.length;
+      return writes[cursor];
+    }
+  }
+
+  /**
+   * A transaction manager where every invocation runs new transactions
+   */
+  @State(Scope.Thread)
+  public static class FreshTransactions {
+
+    TransactionManager transactionManager;
+    int nextTransaction;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      transactionManager = BenchmarkSupport.newTransactionManager();
+      nextTransaction = 1;
+    }
+  }
+
+  @Benchmark
+  public void read(ActiveTransaction state) {
+    state.transactionManager.executeOperation(state.nextRead());
+  }
+
+  @Benchmark
+  public void write(ActiveTransaction state) {
+    state.transactionManager.executeOperation(state.nextWrite());
+  }
+
+  /**
+   * A transaction writes one replicated and one non-replicated variable, reads one, and commits
+   */
+  @Benchmark
+  public void commitOrAbort(FreshTransactions state) {
+    int transaction = state.nextTransaction++;
+    TransactionManager transactionManager = state.transactionManager;
+    transactionManager.executeOperation(begin(transaction));
+    transactionManager.executeOperation(BenchmarkSupport.write(transaction, 2, transaction));
+    transactionManager.executeOperation(BenchmarkSupport.write(transaction, 3, transaction));
+    transactionManager.executeOperation(BenchmarkSupport.read(transaction, 4));
+    transactionManager.executeOperation(end(transaction));
+  }
+
+  /**
+   * Two transactions wait for each other, the younger one is aborted and the older one commits
+   */
+  @Benchmark
+  public void detectDeadLock(FreshTransactions state) {
+    int older = state.nextTransaction++;
+    int younger = state.nextTransaction++;
+    TransactionManager transactionManager = state.transactionManager;
+    transactionManager.executeOperation(begin(older));
+    transactionManager.executeOperation(begin(younger));
+    transactionManager.executeOperation(BenchmarkSupport.write(older, 1, older));
+    transactionManager.executeOperation(BenchmarkSupport.write(younger, 3, younger));
+    transactionManager.executeOperation(BenchmarkSupport.write(older, 3, older));
+    transactionManager.executeOperation(BenchmarkSupport.write(younger, 1, younger));
+    transactionManager.executeOperation(end(older));
+    transactionManager.executeOperation(end(younger));
+  }
+
+  /**
+   * A site holding a write lock fails and recovers, and the writing transaction aborts
+   */
+  @Benchmark
+  public void failAndRecover(FreshTransactions state) {
+    int transaction = state.nextTransaction++;
+    TransactionManager transactionManager = state.transactionManager;
+    transactionManager.executeOperation(begin(transaction));
+    transactionManager.executeOperation(BenchmarkSupport.write(transaction, 2, transaction));
+    transactionManager.executeOperation(fail(3));
+    transactionManager.executeOperation(recover(3));
+    transactionManager.executeOperation(end(transaction));
+  }
+}
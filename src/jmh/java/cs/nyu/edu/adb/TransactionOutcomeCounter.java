@@ -0,0 +1,43 @@
+package cs.nyu.edu.adb;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts commits and aborts of the transactions a benchmark runs, so abort rates are reported
+ * next to throughput
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class TransactionOutcomeCounter implements TransactionListener {
+
+  public long commits;
+  public long aborts;
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    commits = 0;
+    aborts = 0;
+  }
+
+  @Override
+  public void onRead(Operation operation, int value) {
+  }
+
+  @Override
+  public void onWrite(Operation operation) {
+  }
+
+  @Override
+  public void onCommit(int transactionID) {
+    commits++;
+  }
+
+  @Override
+  public void onAbort(int transactionID) {
+    aborts++;
+  }
+}
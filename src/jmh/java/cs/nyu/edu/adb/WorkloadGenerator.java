@@ -0,0 +1,143 @@
+package cs.nyu.edu.adb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class WorkloadGenerator {
+
+  public enum Workload {
+    // transactions read and write uniformly over all variables
+    UNIFORM,
+    // most accesses go to a few hot variables, so transactions block and deadlock often
+    CONTENTION,
+    // sites fail and recover while transactions are running
+    SITE_FAILURES,
+    // half of the transactions are read-only
+    READ_ONLY_MIX
+  }
+
+  private static final int HOT_VARIABLES = 4;
+  private static final double HOT_ACCESS_RATE = 0.8;
+  private static final double WRITE_RATE = 0.5;
+  private static final double FAIL_RATE = 0.02;
+  private static final double RECOVER_RATE = 0.05;
+
+  private Random random;
+  private Topology topology;
+
+  /**
+   * Generate the same operations for the same seed
+   * @param seed of the random generator
+   * @param topology giving the sites and variables to access
+   */
+  public WorkloadGenerator(long seed, Topology topology) {
+    this.random = new Random(seed);
+    this.topology = topology;
+  }
+
+  /**
+   * Generate operations of interleaving transactions
+   * Every transaction begins, runs its reads and writes, and ends,
+   * no operation is generated for a transaction after it ends
+   * @param workload kind of workload to generate
+   * @param transactionCount number of transactions in total
+   * @param concurrency number of transactions running at the same time
+   * @param operationsPerTransaction number of reads and writes of each transaction
+   * @return operations in execution order
+   */
+  public List<Operation> generate(
+      Workload workload,
+      int transactionCount,
+      int concurrency,
+      int operationsPerTransaction) {
+    List<Operation> operations = new ArrayList<>();
+    List<String> running = new ArrayList<>();
+    List<Integer> remaining = new ArrayList<>();
+    List<Boolean> isReadOnly = new ArrayList<>();
+    List<Integer> downSites = new ArrayList<>();
+    int begun = 0;
+
+    while(begun < transactionCount || !running.isEmpty()) {
+      if(running.size() < concurrency && begun < transactionCount) {
+        begun++;
+        String transaction = "T" + begun;
+        boolean readOnly = workload == Workload.READ_ONLY_MIX && random.nextBoolean();
+        OperationType type = readOnly ? OperationType.BEGIN_RO : OperationType.BEGIN;
+        operations.add(new Operation.Builder(type)
+            .transaction(transaction)
+            .build());
+        running.add(transaction);
+        remaining.add(operationsPerTransaction);
+        isReadOnly.add(readOnly);
+        continue;
+      }
+
+      if(workload == Workload.SITE_FAILURES) {
+        generateFailure(operations, downSites);
+      }
+
+      int index = random.nextInt(running.size());
+      String transaction = running.get(index);
+      if(remaining.get(index) == 0) {
+        operations.add(new Operation.Builder(OperationType.END).transaction(transaction).build());
+        running.remove(index);
+        remaining.remove(index);
+        isReadOnly.remove(index);
+        continue;
+      }
+      remaining.set(index, remaining.get(index) - 1);
+
+      int variable = nextVariable(workload);
+      if(!isReadOnly.get(index) && random.nextDouble() < WRITE_RATE) {
+        operations.add(new Operation.Builder(OperationType.WRITE)
+            .transaction(transaction)
+            .variable(variable)
+            .writesToValue(random.nextInt(10000))
+            .build());
+      } else {
+        operations.add(new Operation.Builder(OperationType.READ)
+            .transaction(transaction)
+            .variable(variable)
+            .build());
+      }
+    }
+
+    for(Integer site : downSites) {
+      operations.add(new Operation.Builder(OperationType.RECOVER).site(site).build());
+    }
+    return operations;
+  }
+
+  /**
+   * Maybe fail a site which is up, or recover a site which is down
+   * At least one site is always kept up
+   * @param operations given to add fail or recover operation to
+   * @param downSites sites failed and not recovered yet
+   */
+  private void generateFailure(List<Operation> operations, List<Integer> downSites) {
+    if(!downSites.isEmpty() && random.nextDouble() < RECOVER_RATE) {
+      Integer site = downSites.remove(random.nextInt(downSites.size()));
+      operations.add(new Operation.Builder(OperationType.RECOVER).site(site).build());
+    } else if(downSites.size() < topology.getSiteCount() - 1 && random.nextDouble() < FAIL_RATE) {
+      Integer site = 1 + random.nextInt(topology.getSiteCount());
+      if(!downSites.contains(site)) {
+        downSites.add(site);
+        operations.add(new Operation.Builder(OperationType.FAIL).site(site).build());
+      }
+    }
+  }
+
+  /**
+   * Pick a variable to access
+   * @param workload deciding if accesses are skewed to hot variables
+   * @return index of the variable
+   */
+  private int nextVariable(Workload workload) {
+    int variableCount = topology.getVariableCount();
+    if(workload == Workload.CONTENTION && random.nextDouble() < HOT_ACCESS_RATE) {
+      return 1 + random.nextInt(Math.min(HOT_VARIABLES, variableCount));
+    }
+    return 1 + random.nextInt(variableCount);
+  }
+}
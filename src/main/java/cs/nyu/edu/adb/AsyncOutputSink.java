@@ -0,0 +1,136 @@
+package cs.nyu.edu.adb;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+public class AsyncOutputSink implements OutputSink {
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+  // markers put into the queue, compared by reference so they never clash with messages
+  private static final String FLUSH_MARKER = new String("flush");
+  private static final String CLOSE_MARKER = new String("close");
+
+  private OutputSink delegate;
+  private BlockingQueue<String> queue;
+  private Semaphore flushed;
+  private Thread writerThread;
+
+  // first exception thrown by the delegate, set by the background thread
+  private volatile RuntimeException failure;
+
+  /**
+   * Hand messages to a background thread which writes them to the delegate sink
+   * Writers block when the queue is full, so memory stays bounded
+   * @param delegate sink the background thread writes to
+   * @param queueCapacity max number of messages waiting to be written
+   */
+  public AsyncOutputSink(OutputSink delegate, int queueCapacity) {
+    this.delegate = delegate;
+    queue = new ArrayBlockingQueue<>(queueCapacity);
+    flushed = new Semaphore(0);
+    writerThread = new Thread(this::drain, "output-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Queue a message for the background thread
+   * @param message given to write
+   * @throws RuntimeException thrown by the delegate for an earlier message
+   */
+  @Override
+  public void write(String message) {
+    throwFailure();
+    enqueue(message);
+  }
+
+  /**
+   * Wait until the background thread has written and flushed everything queued before
+   * @throws RuntimeException thrown by the delegate while writing or flushing them
+   */
+  @Override
+  public void flush() {
+    throwFailure();
+    enqueue(FLUSH_MARKER);
+    flushed.acquireUninterruptibly();
+    throwFailure();
+  }
+
+  /**
+   * Wait until the background thread has written everything queued and closed the delegate
+   * @throws RuntimeException thrown by the delegate while writing, flushing or closing
+   */
+  @Override
+  public void close() {
+    enqueue(CLOSE_MARKER);
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    throwFailure();
+  }
+
+  /**
+   * Throw the exception the delegate has thrown, if it has
+   */
+  private void throwFailure() {
+    RuntimeException exception = failure;
+    if(exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Put a message into the queue, waiting for space if it is full
+   * @param message given to put
+   */
+  private void enqueue(String message) {
+    try {
+      queue.put(message);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while writing output", e);
+    }
+  }
+
+  /**
+   * Loop of the background thread, write messages in order until the sink is closed
+   * Once the delegate throws, the exception is kept for the writers and later messages
+   * are dropped, waiting flushes are still released and the delegate is still closed
+   */
+  private void drain() {
+    while(true) {
+      String message;
+      try {
+        message = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      try {
+        if(message == FLUSH_MARKER) {
+          if(failure == null) {
+            delegate.flush();
+          }
+        } else if(message == CLOSE_MARKER) {
+          delegate.close();
+        } else if(failure == null) {
+          delegate.write(message);
+        }
+      } catch (RuntimeException e) {
+        if(failure == null) {
+          failure = e;
+        }
+      } finally {
+        if(message == FLUSH_MARKER) {
+          flushed.release();
+        }
+      }
+      if(message == CLOSE_MARKER) {
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,239 @@
+package cs.nyu.edu.adb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BatchRunner {
+
+  // input files in a directory are the files with this suffix
+  public static final String TRACE_SUFFIX = ".txt";
+
+  private Topology topology;
+  private EngineConfig config;
+  private Path outputDirectory;
+  private boolean isQuiet;
+  private boolean isAsync;
+  private int threadCount;
+
+  public static class Builder {
+
+    private Topology topology;
+    private EngineConfig config;
+    private Path outputDirectory;
+    private boolean isQuiet = false;
+    private boolean isAsync = false;
+    private int threadCount = 1;
+
+    public Builder topology(Topology topology) {
+      this.topology = topology;
+      return this;
+    }
+
+    /**
+     * Decide how the engine of every run is configured
+     * If the config keeps logs, each input file keeps them in a directory of its own
+     * under the log directory, named after the input file
+     * @param config giving how the engine runs
+     * @return this builder
+     */
+    public Builder engineConfig(EngineConfig config) {
+      this.config = config;
+      return this;
+    }
+
+    /**
+     * Directory output files are written to, 'TestOutput' under working directory by default
+     * @param outputDirectory where output files are written
+     * @return this builder
+     */
+    public Builder outputDirectory(Path outputDirectory) {
+      this.outputDirectory = outputDirectory;
+      return this;
+    }
+
+    /**
+     * Skip printing messages to console, only write them to the output files
+     * @param isQuiet true to skip printing
+     * @return this builder
+     */
+    public Builder quiet(boolean isQuiet) {
+      this.isQuiet = isQuiet;
+      return this;
+    }
+
+    /**
+     * Write every output file from a background thread
+     * @param isAsync true to write in background
+     * @return this builder
+     */
+    public Builder async(boolean isAsync) {
+      this.isAsync = isAsync;
+      return this;
+    }
+
+    /**
+     * Number of input files replayed at the same time, 1 by default
+     * With one thread input files are replayed in order on the caller's thread,
+     * otherwise messages printed to console by different runs are interleaved
+     * @param threadCount number of threads
+     * @return this builder
+     */
+    public Builder threadCount(int threadCount) {
+      this.threadCount = threadCount;
+      return this;
+    }
+
+    public BatchRunner build() {
+      if(threadCount < 1) {
+        throw new IllegalArgumentException("Thread count should be at least 1");
+      }
+      if(topology == null) {
+        topology = new Topology.Builder().build();
+      }
+      if(config == null) {
+        config = new EngineConfig.Builder().build();
+      }
+      if(outputDirectory == null) {
+        outputDirectory = IOUtils.getDefaultOutputDirectory();
+      }
+      return new BatchRunner(this);
+    }
+  }
+
+  private BatchRunner(Builder builder) {
+    topology = builder.topology;
+    config = builder.config;
+    outputDirectory = builder.outputDirectory;
+    isQuiet = builder.isQuiet;
+    isAsync = builder.isAsync;
+    threadCount = builder.threadCount;
+  }
+
+  /**
+   * Find input files in a directory
+   * @param directory given to look for input files, sub directories are not visited
+   * @return paths of the input files in the order of their names
+   * @throws IOException if the directory could not be read
+   */
+  public static List<String> listInputFiles(Path directory) throws IOException {
+    try(Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(file -> Files.isRegularFile(file)
+              && file.getFileName().toString().endsWith(TRACE_SUFFIX))
+          .sorted()
+          .map(Path::toString)
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Replay input files, each in an execution context of its own with its own output file
+   * A run which fails doesn't stop the others
+   * @param inputFiles paths of the input files
+   * @return input file -> exception it failed with, for input files which could not be replayed,
+   * in the order they are given
+   * @throws IllegalArgumentException if two input files have the same name
+   */
+  public Map<String, Exception> run(List<String> inputFiles) {
+    checkFileNames(inputFiles);
+    try {
+      Files.createDirectories(outputDirectory);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    Map<String, Exception> failures = new LinkedHashMap<>();
+    if(threadCount == 1 || inputFiles.size() < 2) {
+      for(String inputFile : inputFiles) {
+        Exception failure = replay(inputFile);
+        if(failure != null) {
+          failures.put(inputFile, failure);
+        }
+      }
+      return failures;
+    }
+
+    AtomicInteger threadIndex = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(threadCount, inputFiles.size()), runnable -> {
+          Thread thread = new Thread(runnable, "batch-runner-" + threadIndex.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    try {
+      List<Future<Exception>> results = new ArrayList<>(inputFiles.size());
+      for(String inputFile : inputFiles) {
+        results.add(executor.submit(() -> replay(inputFile)));
+      }
+      for(int i = 0; i < inputFiles.size(); i++) {
+        Exception failure = results.get(i).get();
+        if(failure != null) {
+          failures.put(inputFiles.get(i), failure);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return failures;
+  }
+
+  /**
+   * Check that no two input files share an output file
+   * Output files and log directories are named after input files, two runs with the same name
+   * would replace each other's output and append to the same logs
+   * @param inputFiles paths of the input files
+   * @throws IllegalArgumentException if two input files have the same name
+   */
+  private void checkFileNames(List<String> inputFiles) {
+    // output file -> input file writing it
+    Map<Path, String> outputFiles = new HashMap<>();
+    for(String inputFile : inputFiles) {
+      String other = outputFiles.put(IOUtils.getOutputFile(inputFile, outputDirectory), inputFile);
+      if(other != null) {
+        throw new IllegalArgumentException(String.format(
+            "%s and %s have the same name, input files should have different names",
+            other, inputFile));
+      }
+    }
+  }
+
+  /**
+   * Replay one input file and write its output file
+   * @param inputFile path of the input file, '-' to read from standard input
+   * @return null if the input file is replayed, the exception the run failed with otherwise
+   */
+  private Exception replay(String inputFile) {
+    EngineConfig runConfig = config;
+    if(config.getLogDirectory() != null) {
+      runConfig = new EngineConfig.Builder(config)
+          .logDirectory(config.getLogDirectory().resolve(Paths.get(inputFile).getFileName()))
+          .build();
+    }
+    try(ExecutionContext context = new ExecutionContext(inputFile,
+        IOUtils.createOutputSink(IOUtils.getOutputFile(inputFile, outputDirectory), isQuiet, isAsync),
+        topology, runConfig)) {
+      context.run();
+      return null;
+    } catch (IOException | RuntimeException e) {
+      return e;
+    }
+  }
+}
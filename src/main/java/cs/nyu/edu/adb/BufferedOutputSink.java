@@ -0,0 +1,108 @@
+package cs.nyu.edu.adb;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+
+public class BufferedOutputSink implements OutputSink {
+
+  private String outputFile;
+  private PrintWriter fileWriter;
+  private PrintWriter consoleWriter;
+
+  // characters of the message being written, reused so messages built in place are not copied
+  // to a new string
+  private char[] characters = new char[128];
+
+  /**
+   * Open one buffered writer for the whole run
+   * @param outputFile file to write messages to, null if we only print to console
+   * @param echoToConsole if messages should also be printed to console
+   * @throws IOException if the output file could not be opened
+   */
+  public BufferedOutputSink(String outputFile, boolean echoToConsole) throws IOException {
+    this.outputFile = outputFile;
+    if(outputFile != null) {
+      fileWriter = new PrintWriter(new BufferedWriter(new FileWriter(outputFile)));
+    }
+    if(echoToConsole) {
+      consoleWriter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
+    }
+  }
+
+  @Override
+  public void write(String message) {
+    if(consoleWriter != null) {
+      consoleWriter.println(message);
+    }
+    if(fileWriter != null) {
+      fileWriter.println(message);
+    }
+  }
+
+  @Override
+  public void write(CharSequence message) {
+    int length = message.length();
+    if(characters.length < length) {
+      characters = new char[Math.max(length, characters.length * 2)];
+    }
+    for(int i = 0; i < length; i++) {
+      characters[i] = message.charAt(i);
+    }
+    if(consoleWriter != null) {
+      consoleWriter.write(characters, 0, length);
+      consoleWriter.println();
+    }
+    if(fileWriter != null) {
+      fileWriter.write(characters, 0, length);
+      fileWriter.println();
+    }
+  }
+
+  /**
+   * Flush both writers
+   * @throws UncheckedIOException if a message could not be written or flushed
+   */
+  @Override
+  public void flush() {
+    if(consoleWriter != null) {
+      consoleWriter.flush();
+    }
+    if(fileWriter != null) {
+      fileWriter.flush();
+    }
+    checkErrors();
+  }
+
+  /**
+   * Close the output file, console is only flushed since we do not own System.out
+   * @throws UncheckedIOException if a message could not be written, flushed or closed
+   */
+  @Override
+  public void close() {
+    if(consoleWriter != null) {
+      consoleWriter.flush();
+    }
+    if(fileWriter != null) {
+      fileWriter.close();
+    }
+    checkErrors();
+  }
+
+  /**
+   * PrintWriter never throws, it only remembers that an I/O error has happened
+   * Surface it, otherwise the output would be cut off without anybody noticing
+   */
+  private void checkErrors() {
+    if(fileWriter != null && fileWriter.checkError()) {
+      throw new UncheckedIOException(
+          new IOException(String.format("Could not write output file %s", outputFile)));
+    }
+    if(consoleWriter != null && consoleWriter.checkError()) {
+      throw new UncheckedIOException(new IOException("Could not print output to console"));
+    }
+  }
+}
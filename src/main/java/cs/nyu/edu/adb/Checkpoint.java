@@ -0,0 +1,158 @@
+package cs.nyu.edu.adb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public class Checkpoint {
+
+  private static final int MAGIC = 0x52435031;
+
+  // magic number, time stamp and number of variables
+  private static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+  // variable, committed value and its commit time stamp
+  private static final int VALUE_SIZE = 3 * Integer.BYTES;
+
+  private int timeStamp;
+  private int[] variables;
+  private int[] values;
+  private int[] commitTimeStamps;
+
+  /**
+   * Create a checkpoint of the committed values of a site
+   * The same form is used to send versions from one site to another when a site recovers
+   * @param timeStamp every transaction committed no later than it is included
+   * @param variables stored at the site, sorted by index
+   * @param values committed for the variables
+   * @param commitTimeStamps times the values are committed at
+   */
+  public Checkpoint(int timeStamp, int[] variables, int[] values, int[] commitTimeStamps) {
+    this.timeStamp = timeStamp;
+    this.variables = variables;
+    this.values = values;
+    this.commitTimeStamps = commitTimeStamps;
+  }
+
+  public int getTimeStamp() {
+    return timeStamp;
+  }
+
+  public int size() {
+    return variables.length;
+  }
+
+  public int getVariable(int i) {
+    return variables[i];
+  }
+
+  public int getValue(int i) {
+    return values[i];
+  }
+
+  public int getCommitTimeStamp(int i) {
+    return commitTimeStamps[i];
+  }
+
+  /**
+   * Get the checkpoint file of a site
+   * @param directory where logs and checkpoints are kept
+   * @param site index of the site
+   * @return path of the checkpoint file
+   */
+  public static Path getCheckpointFile(Path directory, int site) {
+    return directory.resolve(String.format("site-%s.checkpoint", site));
+  }
+
+  /**
+   * Write this checkpoint for a site, replacing the previous one
+   * It's written to a temporary file and forced to disk first, then moved over the old one,
+   * so a crash leaves either the old checkpoint or the new one
+   * @param directory where logs and checkpoints are kept
+   * @param site index of the site
+   * @throws IOException if the checkpoint could not be written
+   */
+  public void write(Path directory, int site) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + VALUE_SIZE * size() + Integer.BYTES);
+    buffer.putInt(MAGIC);
+    buffer.putInt(timeStamp);
+    buffer.putInt(size());
+    for(int i = 0; i < size(); i++) {
+      buffer.putInt(variables[i]);
+      buffer.putInt(values[i]);
+      buffer.putInt(commitTimeStamps[i]);
+    }
+    CRC32 checksum = new CRC32();
+    checksum.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) checksum.getValue());
+    buffer.flip();
+
+    Path file = getCheckpointFile(directory, site);
+    Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+    try(FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+    // make the move durable as well, not every platform allows to force a directory
+    try(FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      directoryChannel.force(true);
+    } catch (IOException e) {
+      // the checkpoint itself is on disk, the old one is used if the move gets lost
+    }
+  }
+
+  /**
+   * Read the checkpoint of a site through a memory mapping of the file
+   * @param directory where logs and checkpoints are kept
+   * @param site index of the site
+   * @return the checkpoint, null if the site has none
+   * @throws IOException if the file could not be read or is corrupted
+   */
+  public static Checkpoint read(Path directory, int site) throws IOException {
+    Path file = getCheckpointFile(directory, site);
+    if(!Files.exists(file)) {
+      return null;
+    }
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if(buffer.remaining() < HEADER_SIZE + Integer.BYTES || buffer.getInt(0) != MAGIC) {
+        throw new IOException(String.format("%s is not a checkpoint", file));
+      }
+      int size = buffer.getInt(2 * Integer.BYTES);
+      int length = HEADER_SIZE + VALUE_SIZE * size;
+      if(size < 0 || buffer.remaining() != length + Integer.BYTES) {
+        throw new IOException(String.format("%s is truncated", file));
+      }
+      CRC32 checksum = new CRC32();
+      ByteBuffer content = buffer.duplicate();
+      content.limit(length);
+      checksum.update(content);
+      if(buffer.getInt(length) != (int) checksum.getValue()) {
+        throw new IOException(String.format("%s is corrupted", file));
+      }
+
+      buffer.position(Integer.BYTES);
+      int timeStamp = buffer.getInt();
+      buffer.getInt();
+      int[] variables = new int[size];
+      int[] values = new int[size];
+      int[] commitTimeStamps = new int[size];
+      for(int i = 0; i < size; i++) {
+        variables[i] = buffer.getInt();
+        values[i] = buffer.getInt();
+        commitTimeStamps[i] = buffer.getInt();
+      }
+      return new Checkpoint(timeStamp, variables, values, commitTimeStamps);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package cs.nyu.edu.adb;
+
+public enum ConcurrencyControl {
+
+  // strict two phase locking, reads and writes wait for locks
+  LOCKING("2pl"),
+  // no locks are taken, reads are validated against later commits when the transaction ends
+  OPTIMISTIC("occ");
+
+  private final String name;
+
+  ConcurrencyControl(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Get the name the concurrency control is selected with, like 'occ'
+   * @return name of the concurrency control
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Find the concurrency control with the given name
+   * @param name one of 2pl and occ
+   * @return the matching concurrency control
+   * @throws IllegalArgumentException if no concurrency control has the name
+   */
+  public static ConcurrencyControl fromName(String name) {
+    for(ConcurrencyControl concurrencyControl : values()) {
+      if(concurrencyControl.name.equals(name)) {
+        return concurrencyControl;
+      }
+    }
+    throw new IllegalArgumentException(String.format("Unknown concurrency control %s", name));
+  }
+}
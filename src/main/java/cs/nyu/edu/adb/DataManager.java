@@ -1,17 +1,53 @@
 package cs.nyu.edu.adb;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import org.apache.commons.lang3.tuple.ImmutablePair;
+import java.util.TreeMap;
 
 public class DataManager {
 
-  //variable name -> (last committed value, current value)
-  private Map<Integer, ImmutablePair<Integer, Integer>> variables;
+  // time stamp of the versions we insert when the database is initialized
+  public static final Integer INITIAL_TIME_STAMP = 0;
+
+  private static final int INITIAL_CAPACITY = 32;
+
+  // variables stored at this site
+  private BitSet storedVariables;
+
+  // variable -> last committed value and its commit time stamp. Values are updated in place,
+  // uncommitted values are kept in the workspaces of transactions
+  private int[] committedValues;
+  private int[] lastCommitTimeStamps;
+
+  // variable -> (commit time stamp -> committed value) of versions older than the last one,
+  // only kept while an active read-only transaction could see them, null if there are none.
+  // A list since arrays of generic types could not be created
+  private List<TreeMap<Integer, Integer>> olderVersions;
+
+  // replicated variables which might have missed commits while the site was down,
+  // they could not be read here until they are refreshed
+  private BitSet staleVariables;
 
   public DataManager() {
-    variables = new HashMap<>();
+    this(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Create an empty data manager
+   * @param capacity number of variables it's sized for, it grows if larger ones are inserted
+   */
+  public DataManager(int capacity) {
+    storedVariables = new BitSet(capacity + 1);
+    committedValues = new int[capacity + 1];
+    lastCommitTimeStamps = new int[capacity + 1];
+    olderVersions = new ArrayList<>(Collections.nCopies(capacity + 1, null));
+    staleVariables = new BitSet(capacity + 1);
   }
 
   /**
@@ -19,59 +55,190 @@ public class DataManager {
    * @param variable given to add value to
    * @param currentValue used to give to the variable
    */
-  public void insertValue(Integer variable, Integer currentValue) {
-    variables.put(variable, new ImmutablePair<>(currentValue, currentValue));
+  public void insertValue(int variable, int currentValue) {
+    ensureCapacity(variable);
+    storedVariables.set(variable);
+    committedValues[variable] = currentValue;
+    lastCommitTimeStamps[variable] = INITIAL_TIME_STAMP;
+    olderVersions.set(variable, null);
   }
 
   /**
-   * Update current value of an existing variable
-   * @param variable given to update value
-   * @param updateValue for the given variable
+   * Restore a value committed before the database was restarted
+   * It replaces the value we have, so values should be restored in the order they are committed
+   * @param variable given to restore
+   * @param committedValue found in the log
+   * @param commitTimeStamp time the value is committed at
    */
-  public void updateValue(Integer variable, Integer updateValue) {
-    Integer committedValue = variables.get(variable).getKey();
-    variables.put(variable, new ImmutablePair<>(committedValue, updateValue));
+  public void restoreCommittedValue(int variable, int committedValue, int commitTimeStamp) {
+    if(!isStored(variable)) {
+      throw new IllegalArgumentException(
+          String.format("x%s is not stored at this site", variable));
+    }
+    committedValues[variable] = committedValue;
+    lastCommitTimeStamps[variable] = commitTimeStamp;
+    olderVersions.set(variable, null);
   }
 
   /**
-   * Revert the current value to its committed value for given variable
-   * @param variable given to revert its current value
+   * Copy the committed values of all variables into a checkpoint
+   * @param timeStamp every transaction committed no later than it is included
+   * @return the checkpoint, variables are sorted by index
    */
-  public void updateToCommittedValue(Integer variable) {
-    Integer committedValue = variables.get(variable).getKey();
-    variables.put(variable, new ImmutablePair<>(committedValue, committedValue));
+  public Checkpoint createCheckpoint(int timeStamp) {
+    int size = storedVariables.cardinality();
+    int[] variableIndexes = new int[size];
+    int[] values = new int[size];
+    int[] commitTimeStamps = new int[size];
+    int i = 0;
+    for(int variable = storedVariables.nextSetBit(0); variable >= 0;
+        variable = storedVariables.nextSetBit(variable + 1)) {
+      variableIndexes[i] = variable;
+      values[i] = committedValues[variable];
+      commitTimeStamps[i] = lastCommitTimeStamps[variable];
+      i++;
+    }
+    return new Checkpoint(timeStamp, variableIndexes, values, commitTimeStamps);
   }
 
   /**
-   * Update the committed value to its current value for given variable
+   * Restore all values saved in a checkpoint
+   * @param checkpoint given to restore from
+   */
+  public void restoreCheckpoint(Checkpoint checkpoint) {
+    for(int i = 0; i < checkpoint.size(); i++) {
+      restoreCommittedValue(checkpoint.getVariable(i), checkpoint.getValue(i),
+          checkpoint.getCommitTimeStamp(i));
+    }
+  }
+
+  /**
+   * Commit a value written by a transaction to the given variable
+   * A new version is added to the version chain of this variable, and versions
+   * which no active read-only transaction could see any more are dropped
    * @param variable given to update
+   * @param value committed
+   * @param commitTimeStamp time when the writing transaction commits
+   * @param oldestActiveTimeStamp time stamp of the oldest active read-only transaction
+   */
+  public void commitValue(int variable, int value, int commitTimeStamp,
+      int oldestActiveTimeStamp) {
+    if(oldestActiveTimeStamp >= commitTimeStamp) {
+      // every active read-only transaction sees the new version, older ones are dropped
+      olderVersions.set(variable, null);
+      commitVersion(variable, value, commitTimeStamp, false);
+    } else {
+      commitVersion(variable, value, commitTimeStamp, true);
+      collectGarbage(variable, oldestActiveTimeStamp);
+    }
+    // the copy has the latest value now
+    staleVariables.clear(variable);
+  }
+
+  /**
+   * Mark variables unreadable until they are refreshed
+   * @param staleVariables which might have missed commits
+   */
+  public void markStale(Collection<Integer> staleVariables) {
+    staleVariables.forEach(this.staleVariables::set);
+  }
+
+  /**
+   * Mark variables readable again
+   * @param refreshedVariables which are known to have the latest committed value
+   */
+  public void markRefreshed(Collection<Integer> refreshedVariables) {
+    refreshedVariables.forEach(staleVariables::clear);
+  }
+
+  /**
+   * Check if a variable might have missed commits
+   * @param variable given to check
+   * @return true if the variable could not be read here
+   */
+  public boolean isStale(int variable) {
+    return staleVariables.get(variable);
+  }
+
+  /**
+   * Get variables which might have missed commits
+   * @return stale variables, sorted by index
+   */
+  public List<Integer> getStaleVariables() {
+    List<Integer> stale = new ArrayList<>(staleVariables.cardinality());
+    for(int variable = staleVariables.nextSetBit(0); variable >= 0;
+        variable = staleVariables.nextSetBit(variable + 1)) {
+      stale.add(variable);
+    }
+    return stale;
+  }
+
+  /**
+   * Get the latest committed versions of the given variables
+   * @param variables given to get versions of, all of them should be stored here
+   * @return the versions, with the time stamp of the check as its time stamp
+   */
+  public Checkpoint getLatestVersions(List<Integer> variables) {
+    int[] variableIndexes = new int[variables.size()];
+    int[] values = new int[variables.size()];
+    int[] commitTimeStamps = new int[variables.size()];
+    int latest = INITIAL_TIME_STAMP;
+    for(int i = 0; i < variables.size(); i++) {
+      int variable = variables.get(i);
+      variableIndexes[i] = variable;
+      values[i] = committedValues[variable];
+      commitTimeStamps[i] = lastCommitTimeStamps[variable];
+      latest = Math.max(latest, commitTimeStamps[i]);
+    }
+    return new Checkpoint(latest, variableIndexes, values, commitTimeStamps);
+  }
+
+  /**
+   * Get the delta another copy needs: versions committed here after the versions it has
+   * Variables not stored here are skipped
+   * @param versions the other copy has
+   * @return latest versions here which are newer than the given ones
    */
-  public void updateToCurValue(Integer variable) {
-    Integer curValue = variables.get(variable).getValue();
-    variables.put(variable, new ImmutablePair<>(curValue, curValue));
+  public Checkpoint getNewerVersions(Checkpoint versions) {
+    List<Integer> newerVariables = new ArrayList<>();
+    for(int i = 0; i < versions.size(); i++) {
+      int variable = versions.getVariable(i);
+      if(isStored(variable)
+          && lastCommitTimeStamps[variable] > versions.getCommitTimeStamp(i)) {
+        newerVariables.add(variable);
+      }
+    }
+    return getLatestVersions(newerVariables);
   }
 
   /**
-   * Get current value for the given variable
-   * @param variable given to get current value
-   * @return current value of a variable
+   * Install versions committed at other copies which are newer than ours
+   * @param versions given to install
+   * @return variables which got a new version, in the order of the given versions
    */
-  public Integer getCurValue(Integer variable) {
-    return variables.get(variable).getValue();
+  public List<Integer> installVersions(Checkpoint versions) {
+    List<Integer> installedVariables = new ArrayList<>();
+    for(int i = 0; i < versions.size(); i++) {
+      int variable = versions.getVariable(i);
+      if(versions.getCommitTimeStamp(i) > lastCommitTimeStamps[variable]) {
+        commitVersion(variable, versions.getValue(i), versions.getCommitTimeStamp(i), true);
+        installedVariables.add(variable);
+      }
+    }
+    return installedVariables;
   }
 
   /**
    * Get all committed values which are sorted by their variable index
+   * Variables are visited in index order, so nothing has to be sorted
    * @return values of all variables sorted by variables' indexes
    */
   public Map<Integer, Integer> getAllSortedCommittedValues() {
-
-    LinkedHashMap<Integer, Integer> sortedMap = new LinkedHashMap<>();
-    variables.entrySet()
-        .stream()
-        .sorted(Map.Entry.comparingByKey())
-        .forEachOrdered(x -> sortedMap.put(x.getKey(), x.getValue().getKey()));
-
+    Map<Integer, Integer> sortedMap = new LinkedHashMap<>();
+    for(int variable = storedVariables.nextSetBit(0); variable >= 0;
+        variable = storedVariables.nextSetBit(variable + 1)) {
+      sortedMap.put(variable, committedValues[variable]);
+    }
     return sortedMap;
   }
 
@@ -80,8 +247,124 @@ public class DataManager {
    * @param variable given to get committed value
    * @return committed value of a variable
    */
-  public Integer getCommittedValue(Integer variable) {
-    return variables.get(variable).getKey();
+  public int getCommittedValue(int variable) {
+    return committedValues[variable];
+  }
+
+  /**
+   * Get the value of a variable committed as of the given time stamp
+   * This is what a read-only transaction which begins at that time should see
+   * @param variable given to get committed value
+   * @param timeStamp of the snapshot
+   * @return the latest value committed no later than the time stamp
+   */
+  public int getCommittedValue(int variable, int timeStamp) {
+    if(timeStamp >= lastCommitTimeStamps[variable]) {
+      return committedValues[variable];
+    }
+    return findOlderVersion(variable, timeStamp).getValue();
+  }
+
+  /**
+   * Get the commit time stamp of the last committed value of a variable
+   * @param variable given to check
+   * @return time stamp of the latest version
+   */
+  public int getLastCommitTimeStamp(int variable) {
+    return lastCommitTimeStamps[variable];
+  }
+
+  /**
+   * Get the commit time stamp of the version a snapshot at the given time stamp would read
+   * @param variable given to check
+   * @param timeStamp of the snapshot
+   * @return time stamp of the latest version committed no later than the given time stamp
+   */
+  public int getCommitTimeStamp(int variable, int timeStamp) {
+    if(timeStamp >= lastCommitTimeStamps[variable]) {
+      return lastCommitTimeStamps[variable];
+    }
+    return findOlderVersion(variable, timeStamp).getKey();
+  }
+
+  /**
+   * Drop versions of all variables which are invisible to every active read-only transaction
+   * @param oldestActiveTimeStamp time stamp of the oldest active read-only transaction
+   */
+  public void collectGarbage(int oldestActiveTimeStamp) {
+    for(int variable = 0; variable < olderVersions.size(); variable++) {
+      if(olderVersions.get(variable) != null) {
+        collectGarbage(variable, oldestActiveTimeStamp);
+      }
+    }
+  }
+
+  /**
+   * Keep the newest version which is visible at the given time stamp and all versions after it
+   * @param variable whose version chain is collected
+   * @param oldestActiveTimeStamp time stamp of the oldest active read-only transaction
+   */
+  private void collectGarbage(int variable, int oldestActiveTimeStamp) {
+    TreeMap<Integer, Integer> versions = olderVersions.get(variable);
+    if(versions == null) {
+      return;
+    }
+    if(oldestActiveTimeStamp >= lastCommitTimeStamps[variable]) {
+      // the last version is visible to everyone
+      olderVersions.set(variable, null);
+      return;
+    }
+    Integer oldestVisibleVersion = versions.floorKey(oldestActiveTimeStamp);
+    if(oldestVisibleVersion != null) {
+      versions.headMap(oldestVisibleVersion, false).clear();
+    }
+  }
+
+  /**
+   * Make a value the last committed version of a variable
+   * @param variable given to commit
+   * @param value committed
+   * @param commitTimeStamp time the value is committed at
+   * @param keepPrevious true if the previous version is moved to the older versions,
+   * false if no read-only transaction could see it
+   */
+  private void commitVersion(int variable, int value, int commitTimeStamp,
+      boolean keepPrevious) {
+    if(keepPrevious) {
+      TreeMap<Integer, Integer> versions = olderVersions.get(variable);
+      if(versions == null) {
+        versions = new TreeMap<>();
+        olderVersions.set(variable, versions);
+      }
+      versions.put(lastCommitTimeStamps[variable], committedValues[variable]);
+    }
+    committedValues[variable] = value;
+    lastCommitTimeStamps[variable] = commitTimeStamp;
+  }
+
+  private Map.Entry<Integer, Integer> findOlderVersion(int variable, int timeStamp) {
+    TreeMap<Integer, Integer> versions = olderVersions.get(variable);
+    Map.Entry<Integer, Integer> version = versions == null ? null
+        : versions.floorEntry(timeStamp);
+    if(version == null) {
+      throw new IllegalStateException(
+          String.format("x%s has no version committed before %s", variable, timeStamp));
+    }
+    return version;
+  }
+
+  private boolean isStored(int variable) {
+    return variable >= 0 && storedVariables.get(variable);
+  }
+
+  private void ensureCapacity(int variable) {
+    if(variable < committedValues.length) {
+      return;
+    }
+    int capacity = Math.max(variable + 1, 2 * committedValues.length);
+    committedValues = Arrays.copyOf(committedValues, capacity);
+    lastCommitTimeStamps = Arrays.copyOf(lastCommitTimeStamps, capacity);
+    olderVersions.addAll(Collections.nCopies(capacity - olderVersions.size(), null));
   }
 
 }
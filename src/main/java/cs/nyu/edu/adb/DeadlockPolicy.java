@@ -0,0 +1,74 @@
+package cs.nyu.edu.adb;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+public interface DeadlockPolicy {
+
+  String WAITS_FOR = "waits-for";
+  String WOUND_WAIT = "wound-wait";
+  String WAIT_DIE = "wait-die";
+  String TIMEOUT = "timeout";
+
+  /**
+   * Called when a transaction is blocked by locks other transactions hold at a site
+   * @param transaction which has just been blocked
+   * @param holders transactions holding the conflicting locks, in the order they are found
+   * @param currentTime time of the operation being executed
+   * @return transactions which should be aborted, empty if everybody keeps waiting
+   */
+  List<Transaction> onBlock(Transaction transaction, List<Transaction> holders, int currentTime);
+
+  /**
+   * Called when a transaction gets the locks of a read or write
+   * @param transaction which has been granted
+   */
+  default void onGrant(Transaction transaction) {
+  }
+
+  /**
+   * Called before every operation is executed
+   * @param currentTime time of the operation
+   * @return transactions which should be aborted, empty if none
+   */
+  default List<Transaction> onTick(int currentTime) {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Called when a transaction commits or aborts, it could not be blocked any more
+   * @param transaction which has finished
+   */
+  void onFinish(Transaction transaction);
+
+  /**
+   * Get the message printed when a transaction is aborted by this policy
+   * @param victim transaction which is aborted
+   * @return the message
+   */
+  String getAbortMessage(Transaction victim);
+
+  /**
+   * Find the policy with the given name
+   * @param name one of waits-for, wound-wait, wait-die and timeout
+   * @param lockTimeout number of operations a transaction could wait for locks,
+   * only used by the timeout policy
+   * @return supplier of the policy
+   * @throws IllegalArgumentException if there's no policy with the name
+   */
+  static Supplier<DeadlockPolicy> forName(String name, int lockTimeout) {
+    switch (name) {
+      case WAITS_FOR:
+        return WaitsForGraphPolicy::new;
+      case WOUND_WAIT:
+        return WoundWaitPolicy::new;
+      case WAIT_DIE:
+        return WaitDiePolicy::new;
+      case TIMEOUT:
+        return () -> new TimeoutPolicy(lockTimeout);
+      default:
+        throw new IllegalArgumentException(String.format("Unknown deadlock policy %s", name));
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package cs.nyu.edu.adb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DefaultPlacement implements Placement {
+
+  /**
+   * Variable with odd index exists in site[1 + index % siteCount],
+   * variable with even index is replicated to 'replication factor' sites
+   * starting from site[1 + index % siteCount], which is all sites by default
+   * @param variable index of the variable
+   * @param topology giving the number of sites and the replication factor
+   * @return indexes of the sites storing this variable, in ascending order
+   */
+  @Override
+  public List<Integer> getSites(Integer variable, Topology topology) {
+    int siteCount = topology.getSiteCount();
+    List<Integer> sites = new ArrayList<>();
+    if(variable % 2 == 1) {
+      sites.add(1 + variable % siteCount);
+    } else {
+      for(int i = 0; i < topology.getReplicationFactor(); i++) {
+        sites.add(1 + (variable + i) % siteCount);
+      }
+      Collections.sort(sites);
+    }
+    return sites;
+  }
+}
@@ -0,0 +1,23 @@
+package cs.nyu.edu.adb;
+
+/**
+ * Sink dropping every message, used when nobody reads the output
+ */
+public class DiscardingOutputSink implements OutputSink {
+
+  @Override
+  public void write(String message) {
+  }
+
+  @Override
+  public void write(CharSequence message) {
+  }
+
+  @Override
+  public void flush() {
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,210 @@
+package cs.nyu.edu.adb;
+
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+public class EngineConfig {
+
+  public static final int DEFAULT_GROUP_COMMIT_SIZE = 64;
+  public static final int DEFAULT_CHECKPOINT_INTERVAL = 1024;
+
+  private boolean concurrentSites;
+  private Path logDirectory;
+  private int groupCommitSize;
+  private int checkpointInterval;
+  private Supplier<DeadlockPolicy> deadlockPolicy;
+  private String jmxName;
+  private Supplier<ReplicaSelector> replicaSelector;
+  private ConcurrencyControl concurrencyControl;
+
+  public static class Builder {
+
+    private boolean concurrentSites = false;
+    private Path logDirectory;
+    private int groupCommitSize = DEFAULT_GROUP_COMMIT_SIZE;
+    private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    private Supplier<DeadlockPolicy> deadlockPolicy = WaitsForGraphPolicy::new;
+    private String jmxName;
+    private Supplier<ReplicaSelector> replicaSelector = LowestIndexSelector::new;
+    private ConcurrencyControl concurrencyControl = ConcurrencyControl.LOCKING;
+
+    public Builder() {
+
+    }
+
+    /**
+     * Start from the settings of an existing config
+     * @param config given to copy settings from
+     */
+    public Builder(EngineConfig config) {
+      concurrentSites = config.concurrentSites;
+      logDirectory = config.logDirectory;
+      groupCommitSize = config.groupCommitSize;
+      checkpointInterval = config.checkpointInterval;
+      deadlockPolicy = config.deadlockPolicy;
+      jmxName = config.jmxName;
+      replicaSelector = config.replicaSelector;
+      concurrencyControl = config.concurrencyControl;
+    }
+
+    /**
+     * Give every site its own executor, so lock and data work of different sites
+     * runs in parallel. Sites run inline on the caller's thread by default
+     * @param concurrentSites true to run each site on a dedicated thread
+     * @return this builder
+     */
+    public Builder concurrentSites(boolean concurrentSites) {
+      this.concurrentSites = concurrentSites;
+      return this;
+    }
+
+    /**
+     * Keep a write-ahead log for every site in the given directory. Committed values in it
+     * are replayed when the engine starts. Nothing is logged by default
+     * @param logDirectory where logs are kept
+     * @return this builder
+     */
+    public Builder logDirectory(Path logDirectory) {
+      this.logDirectory = logDirectory;
+      return this;
+    }
+
+    /**
+     * Number of commits sharing one fsync of the logs at most
+     * @param groupCommitSize number of commits
+     * @return this builder
+     */
+    public Builder groupCommitSize(int groupCommitSize) {
+      this.groupCommitSize = groupCommitSize;
+      return this;
+    }
+
+    /**
+     * Number of commits between two checkpoints of the sites, 0 to take no checkpoint
+     * Log segments covered by a checkpoint are deleted, so restart time stays bounded
+     * @param checkpointInterval number of commits
+     * @return this builder
+     */
+    public Builder checkpointInterval(int checkpointInterval) {
+      this.checkpointInterval = checkpointInterval;
+      return this;
+    }
+
+    /**
+     * Decide how deadlocks are handled. Every transaction manager gets a policy of its own
+     * from the supplier. Deadlocks are detected on a waits-for graph by default
+     * @param deadlockPolicy supplier of the policy, like WoundWaitPolicy::new
+     * @return this builder
+     */
+    public Builder deadlockPolicy(Supplier<DeadlockPolicy> deadlockPolicy) {
+      this.deadlockPolicy = deadlockPolicy;
+      return this;
+    }
+
+    /**
+     * Register the metrics of the transaction manager to JMX under the given name while it
+     * runs, it's unregistered at shutdown. Metrics are not registered by default
+     * @param jmxName name of the metrics, unique among running transaction managers
+     * @return this builder
+     */
+    public Builder jmxName(String jmxName) {
+      this.jmxName = jmxName;
+      return this;
+    }
+
+    /**
+     * Decide which copies of a replicated variable reads go to. Every transaction manager
+     * gets a selector of its own from the supplier. Copies are tried in ascending order
+     * of site index by default
+     * @param replicaSelector supplier of the selector, like RoundRobinSelector::new
+     * @return this builder
+     */
+    public Builder replicaSelector(Supplier<ReplicaSelector> replicaSelector) {
+      this.replicaSelector = replicaSelector;
+      return this;
+    }
+
+    /**
+     * Decide how transactions are kept from seeing each other's writes. Under optimistic
+     * concurrency control nothing is locked, writes are buffered until commit, and a
+     * transaction aborts at its end if a version it read has been overwritten.
+     * Strict two phase locking is used by default
+     * @param concurrencyControl given to use
+     * @return this builder
+     */
+    public Builder concurrencyControl(ConcurrencyControl concurrencyControl) {
+      this.concurrencyControl = concurrencyControl;
+      return this;
+    }
+
+    public EngineConfig build() {
+      if(groupCommitSize < 1) {
+        throw new IllegalArgumentException("Group commit size should be at least 1");
+      }
+      if(checkpointInterval < 0) {
+        throw new IllegalArgumentException("Checkpoint interval should not be negative");
+      }
+      if(deadlockPolicy == null) {
+        throw new IllegalArgumentException("Deadlock policy should be given");
+      }
+      if(replicaSelector == null) {
+        throw new IllegalArgumentException("Replica selector should be given");
+      }
+      if(concurrencyControl == null) {
+        throw new IllegalArgumentException("Concurrency control should be given");
+      }
+      return new EngineConfig(this);
+    }
+  }
+
+  private EngineConfig(Builder builder) {
+    concurrentSites = builder.concurrentSites;
+    logDirectory = builder.logDirectory;
+    groupCommitSize = builder.groupCommitSize;
+    checkpointInterval = builder.checkpointInterval;
+    deadlockPolicy = builder.deadlockPolicy;
+    jmxName = builder.jmxName;
+    replicaSelector = builder.replicaSelector;
+    concurrencyControl = builder.concurrencyControl;
+  }
+
+  public boolean isConcurrentSites() {
+    return concurrentSites;
+  }
+
+  public Path getLogDirectory() {
+    return logDirectory;
+  }
+
+  public int getGroupCommitSize() {
+    return groupCommitSize;
+  }
+
+  public int getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  public String getJmxName() {
+    return jmxName;
+  }
+
+  public ConcurrencyControl getConcurrencyControl() {
+    return concurrencyControl;
+  }
+
+  /**
+   * Create the deadlock policy of a transaction manager
+   * @return a new policy
+   */
+  public DeadlockPolicy createDeadlockPolicy() {
+    return deadlockPolicy.get();
+  }
+
+  /**
+   * Create the replica selector of a transaction manager
+   * @return a new selector
+   */
+  public ReplicaSelector createReplicaSelector() {
+    return replicaSelector.get();
+  }
+}
@@ -0,0 +1,408 @@
+package cs.nyu.edu.adb;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class EngineMetrics implements EngineMetricsMXBean {
+
+  public static final String JMX_DOMAIN = "cs.nyu.edu.adb";
+
+  private LongAdder blockedOperations;
+  private LongAdder deadlocks;
+  private LongAdder deadlockVictims;
+  private LongAdder siteFailureAborts;
+  private LongAdder validationFailures;
+  private LongAdder readLocksGranted;
+  private LongAdder writeLocksGranted;
+  private LongAdder lockConflicts;
+
+  // counts of reads, writes, commits and aborts are the counts of their histograms
+  private LatencyHistogram readLatency;
+  private LatencyHistogram writeLatency;
+  private LatencyHistogram commitLatency;
+  private LatencyHistogram abortLatency;
+
+  // time from blocking a read or write until it's granted
+  private LatencyHistogram blockedTime;
+
+  // variable -> number of operations waiting for it, removed once nobody waits
+  private Map<Integer, Integer> waitingQueueDepths;
+  private Map<Integer, Integer> maxWaitingQueueDepths;
+
+  // name the metrics are registered with in JMX, null if they are not registered
+  private ObjectName objectName;
+
+  /**
+   * Create empty metrics
+   * Counters are striped, so site threads and the transaction manager update them
+   * without contending, and a snapshot could be taken from any thread
+   */
+  public EngineMetrics() {
+    blockedOperations = new LongAdder();
+    deadlocks = new LongAdder();
+    deadlockVictims = new LongAdder();
+    siteFailureAborts = new LongAdder();
+    validationFailures = new LongAdder();
+    readLocksGranted = new LongAdder();
+    writeLocksGranted = new LongAdder();
+    lockConflicts = new LongAdder();
+    readLatency = new LatencyHistogram();
+    writeLatency = new LatencyHistogram();
+    commitLatency = new LatencyHistogram();
+    abortLatency = new LatencyHistogram();
+    blockedTime = new LatencyHistogram();
+    waitingQueueDepths = new ConcurrentHashMap<>();
+    maxWaitingQueueDepths = new ConcurrentHashMap<>();
+  }
+
+  void recordRead(long nanos) {
+    readLatency.record(nanos);
+  }
+
+  void recordWrite(long nanos) {
+    writeLatency.record(nanos);
+  }
+
+  void recordCommit(long nanos) {
+    commitLatency.record(nanos);
+  }
+
+  void recordAbort(long nanos) {
+    abortLatency.record(nanos);
+  }
+
+  void recordBlock() {
+    blockedOperations.increment();
+  }
+
+  void recordBlockedTime(long nanos) {
+    blockedTime.record(nanos);
+  }
+
+  /**
+   * Record that the deadlock policy picked victims
+   * @param victims number of transactions aborted
+   */
+  void recordDeadlock(int victims) {
+    deadlocks.increment();
+    deadlockVictims.add(victims);
+  }
+
+  void recordSiteFailureAbort() {
+    siteFailureAborts.increment();
+  }
+
+  void recordValidationFailure() {
+    validationFailures.increment();
+  }
+
+  void recordReadLock() {
+    readLocksGranted.increment();
+  }
+
+  void recordWriteLock() {
+    writeLocksGranted.increment();
+  }
+
+  void recordLockConflict() {
+    lockConflicts.increment();
+  }
+
+  /**
+   * Record the number of operations waiting for a variable after its queue has changed
+   * @param variable of the queue
+   * @param depth number of operations in the queue
+   */
+  void recordWaitingQueueDepth(int variable, int depth) {
+    if(depth == 0) {
+      waitingQueueDepths.remove(variable);
+    } else {
+      waitingQueueDepths.put(variable, depth);
+      maxWaitingQueueDepths.merge(variable, depth, Math::max);
+    }
+  }
+
+  /**
+   * Take a snapshot of all the metrics
+   * Metrics could be updated meanwhile, so they might not be consistent with each other
+   * @return the snapshot
+   */
+  public Snapshot snapshot() {
+    return new Snapshot(this);
+  }
+
+  /**
+   * Register the metrics to the platform MBean server, so they could be watched by JMX clients
+   * @param name given to tell these metrics from those of other transaction managers
+   * @throws IllegalArgumentException if the name is invalid or taken by other metrics
+   * @throws IllegalStateException if these metrics are already registered
+   */
+  public synchronized void registerMBean(String name) {
+    if(objectName != null) {
+      throw new IllegalStateException("Metrics are already registered as " + objectName);
+    }
+    try {
+      ObjectName newObjectName = new ObjectName(String.format("%s:type=EngineMetrics,name=%s",
+          JMX_DOMAIN, ObjectName.quote(name)));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, newObjectName);
+      objectName = newObjectName;
+    } catch (JMException e) {
+      throw new IllegalArgumentException("Could not register metrics as " + name, e);
+    }
+  }
+
+  /**
+   * Remove the metrics from the platform MBean server, nothing happens if they're not registered
+   * @throws IllegalStateException if they could not be unregistered
+   */
+  public synchronized void unregisterMBean() {
+    if(objectName == null) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName registeredName = objectName;
+    // forgotten either way, unregistering again could not do better
+    objectName = null;
+    try {
+      if(server.isRegistered(registeredName)) {
+        server.unregisterMBean(registeredName);
+      }
+    } catch (JMException e) {
+      throw new IllegalStateException("Could not unregister metrics " + registeredName, e);
+    }
+  }
+
+  @Override
+  public long getReads() {
+    return readLatency.getCount();
+  }
+
+  @Override
+  public long getWrites() {
+    return writeLatency.getCount();
+  }
+
+  @Override
+  public long getCommits() {
+    return commitLatency.getCount();
+  }
+
+  @Override
+  public long getAborts() {
+    return abortLatency.getCount();
+  }
+
+  @Override
+  public long getBlockedOperations() {
+    return blockedOperations.sum();
+  }
+
+  @Override
+  public long getDeadlocks() {
+    return deadlocks.sum();
+  }
+
+  @Override
+  public long getDeadlockVictims() {
+    return deadlockVictims.sum();
+  }
+
+  @Override
+  public long getSiteFailureAborts() {
+    return siteFailureAborts.sum();
+  }
+
+  @Override
+  public long getValidationFailures() {
+    return validationFailures.sum();
+  }
+
+  @Override
+  public long getReadLocksGranted() {
+    return readLocksGranted.sum();
+  }
+
+  @Override
+  public long getWriteLocksGranted() {
+    return writeLocksGranted.sum();
+  }
+
+  @Override
+  public long getLockConflicts() {
+    return lockConflicts.sum();
+  }
+
+  @Override
+  public long getReadLatencyP99() {
+    return readLatency.snapshot().getP99();
+  }
+
+  @Override
+  public long getWriteLatencyP99() {
+    return writeLatency.snapshot().getP99();
+  }
+
+  @Override
+  public long getCommitLatencyP99() {
+    return commitLatency.snapshot().getP99();
+  }
+
+  @Override
+  public long getAbortLatencyP99() {
+    return abortLatency.snapshot().getP99();
+  }
+
+  @Override
+  public long getBlockedTimeP99() {
+    return blockedTime.snapshot().getP99();
+  }
+
+  @Override
+  public Map<Integer, Integer> getWaitingQueueDepths() {
+    return new TreeMap<>(waitingQueueDepths);
+  }
+
+  @Override
+  public Map<Integer, Integer> getMaxWaitingQueueDepths() {
+    return new TreeMap<>(maxWaitingQueueDepths);
+  }
+
+  public static class Snapshot {
+
+    private long blockedOperations;
+    private long deadlocks;
+    private long deadlockVictims;
+    private long siteFailureAborts;
+    private long validationFailures;
+    private long readLocksGranted;
+    private long writeLocksGranted;
+    private long lockConflicts;
+    private LatencyHistogram.Snapshot readLatency;
+    private LatencyHistogram.Snapshot writeLatency;
+    private LatencyHistogram.Snapshot commitLatency;
+    private LatencyHistogram.Snapshot abortLatency;
+    private LatencyHistogram.Snapshot blockedTime;
+    private Map<Integer, Integer> waitingQueueDepths;
+    private Map<Integer, Integer> maxWaitingQueueDepths;
+
+    private Snapshot(EngineMetrics metrics) {
+      blockedOperations = metrics.getBlockedOperations();
+      deadlocks = metrics.getDeadlocks();
+      deadlockVictims = metrics.getDeadlockVictims();
+      siteFailureAborts = metrics.getSiteFailureAborts();
+      validationFailures = metrics.getValidationFailures();
+      readLocksGranted = metrics.getReadLocksGranted();
+      writeLocksGranted = metrics.getWriteLocksGranted();
+      lockConflicts = metrics.getLockConflicts();
+      readLatency = metrics.readLatency.snapshot();
+      writeLatency = metrics.writeLatency.snapshot();
+      commitLatency = metrics.commitLatency.snapshot();
+      abortLatency = metrics.abortLatency.snapshot();
+      blockedTime = metrics.blockedTime.snapshot();
+      waitingQueueDepths = metrics.getWaitingQueueDepths();
+      maxWaitingQueueDepths = metrics.getMaxWaitingQueueDepths();
+    }
+
+    public long getReads() {
+      return readLatency.getCount();
+    }
+
+    public long getWrites() {
+      return writeLatency.getCount();
+    }
+
+    public long getCommits() {
+      return commitLatency.getCount();
+    }
+
+    public long getAborts() {
+      return abortLatency.getCount();
+    }
+
+    public long getBlockedOperations() {
+      return blockedOperations;
+    }
+
+    public long getDeadlocks() {
+      return deadlocks;
+    }
+
+    public long getDeadlockVictims() {
+      return deadlockVictims;
+    }
+
+    public long getSiteFailureAborts() {
+      return siteFailureAborts;
+    }
+
+    public long getValidationFailures() {
+      return validationFailures;
+    }
+
+    public long getReadLocksGranted() {
+      return readLocksGranted;
+    }
+
+    public long getWriteLocksGranted() {
+      return writeLocksGranted;
+    }
+
+    public long getLockConflicts() {
+      return lockConflicts;
+    }
+
+    public LatencyHistogram.Snapshot getReadLatency() {
+      return readLatency;
+    }
+
+    public LatencyHistogram.Snapshot getWriteLatency() {
+      return writeLatency;
+    }
+
+    public LatencyHistogram.Snapshot getCommitLatency() {
+      return commitLatency;
+    }
+
+    public LatencyHistogram.Snapshot getAbortLatency() {
+      return abortLatency;
+    }
+
+    public LatencyHistogram.Snapshot getBlockedTime() {
+      return blockedTime;
+    }
+
+    public Map<Integer, Integer> getWaitingQueueDepths() {
+      return waitingQueueDepths;
+    }
+
+    public Map<Integer, Integer> getMaxWaitingQueueDepths() {
+      return maxWaitingQueueDepths;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder stringBuilder = new StringBuilder();
+      stringBuilder.append("reads: ").append(readLatency).append('\n')
+          .append("writes: ").append(writeLatency).append('\n')
+          .append("commits: ").append(commitLatency).append('\n')
+          .append("aborts: ").append(abortLatency).append('\n')
+          .append("blocked: ").append(blockedOperations)
+          .append(" operations, ").append(blockedTime).append('\n')
+          .append("deadlocks: ").append(deadlocks)
+          .append(", victims: ").append(deadlockVictims)
+          .append(", site failure aborts: ").append(siteFailureAborts)
+          .append(", validation failures: ").append(validationFailures).append('\n')
+          .append("locks granted: ").append(readLocksGranted).append(" read, ")
+          .append(writeLocksGranted).append(" write, conflicts: ").append(lockConflicts)
+          .append('\n')
+          .append("max waiting queue depths: ").append(maxWaitingQueueDepths);
+      return stringBuilder.toString();
+    }
+  }
+}
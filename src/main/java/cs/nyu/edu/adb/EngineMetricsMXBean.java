@@ -0,0 +1,76 @@
+package cs.nyu.edu.adb;
+
+import java.util.Map;
+
+/**
+ * Metrics of a transaction manager as seen through JMX
+ * Latencies are in nanoseconds
+ */
+public interface EngineMetricsMXBean {
+
+  long getReads();
+
+  long getWrites();
+
+  long getCommits();
+
+  long getAborts();
+
+  /**
+   * Number of times a read or write had to wait for locks or a down site
+   * @return number of blocked operations
+   */
+  long getBlockedOperations();
+
+  /**
+   * Number of times the deadlock policy picked victims
+   * @return number of deadlocks detected or prevented
+   */
+  long getDeadlocks();
+
+  long getDeadlockVictims();
+
+  /**
+   * Number of transactions aborted at their end since a site they accessed has failed
+   * @return number of aborts caused by site failures
+   */
+  long getSiteFailureAborts();
+
+  /**
+   * Number of transactions aborted at their end by optimistic concurrency control
+   * @return number of failed validations
+   */
+  long getValidationFailures();
+
+  long getReadLocksGranted();
+
+  long getWriteLocksGranted();
+
+  /**
+   * Number of operations blocked because another transaction holds a lock they need
+   * @return number of lock conflicts
+   */
+  long getLockConflicts();
+
+  long getReadLatencyP99();
+
+  long getWriteLatencyP99();
+
+  long getCommitLatencyP99();
+
+  long getAbortLatencyP99();
+
+  long getBlockedTimeP99();
+
+  /**
+   * Get the number of operations waiting for each variable right now
+   * @return variable -> queue depth, only variables somebody waits for
+   */
+  Map<Integer, Integer> getWaitingQueueDepths();
+
+  /**
+   * Get the largest number of operations which have waited for each variable at the same time
+   * @return variable -> max queue depth, only variables somebody has waited for
+   */
+  Map<Integer, Integer> getMaxWaitingQueueDepths();
+}
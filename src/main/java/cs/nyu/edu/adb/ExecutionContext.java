@@ -0,0 +1,71 @@
+package cs.nyu.edu.adb;
+
+import java.io.IOException;
+import java.util.stream.Stream;
+
+public class ExecutionContext implements AutoCloseable {
+
+  private String inputFile;
+  private OutputSink outputSink;
+  private TransactionManager transactionManager;
+
+  /**
+   * Create everything one replay of an input file needs
+   * Nothing is shared with other contexts, so replays could run on different threads
+   * @param inputFile path of the input file, '-' to read from standard input
+   * @param outputSink given to write output messages of the run to, closed with the context,
+   * or right away if the transaction manager could not be created
+   * @param topology giving sites, variables and where variables are placed
+   * @param config giving how the engine runs
+   */
+  public ExecutionContext(
+      String inputFile,
+      OutputSink outputSink,
+      Topology topology,
+      EngineConfig config) {
+    this.inputFile = inputFile;
+    this.outputSink = outputSink;
+    try {
+      transactionManager = new TransactionManager(topology, config, outputSink);
+    } catch (RuntimeException e) {
+      // like a corrupt checkpoint, nobody could close the context we fail to create
+      try {
+        outputSink.close();
+      } catch (RuntimeException closeException) {
+        e.addSuppressed(closeException);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Replay the input file
+   * Operations are executed while the input file is being parsed
+   * @throws IOException if the input file could not be read
+   */
+  public void run() throws IOException {
+    try(Stream<Operation> operations = IOUtils.parseOperations(inputFile)) {
+      transactionManager.run(operations);
+    }
+  }
+
+  public String getInputFile() {
+    return inputFile;
+  }
+
+  public TransactionManager getTransactionManager() {
+    return transactionManager;
+  }
+
+  /**
+   * Stop the transaction manager, then flush and close the output of the run
+   */
+  @Override
+  public void close() {
+    try {
+      transactionManager.shutdown();
+    } finally {
+      outputSink.close();
+    }
+  }
+}
@@ -1,15 +1,15 @@
 package cs.nyu.edu.adb;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class IOUtils {
 
@@ -21,93 +21,119 @@ public class IOUtils {
   public static final String DUMP = "dump";
   public static final String FAIL = "fail";
   public static final String RECOVER = "recover";
-  public static final String OUTPUT_DIRECTORY = "/TestOutput/";
-  public static final String REGEX = "/";
+  public static final String OUTPUT_DIRECTORY = "TestOutput";
   public static final String USER_DIR = "user.dir";
-  public static String inputFile;
-  public static String outputFile;
-  public List<Operation> operations;
+  // input file name which means operations are read from standard input
+  public static final String STDIN = "-";
+  public static final String STDIN_OUTPUT_FILE = "stdin.txt";
+  private OutputSink outputSink;
 
+  // output messages are built here one at a time
+  private StringBuilder message;
+
+  /**
+   * Create the output of one run, which only prints messages to console
+   */
   public IOUtils() {
+    this(createConsoleSink());
+  }
 
+  /**
+   * Create the output of one run
+   * Every run has its own, so runs could write their output files at the same time
+   * @param outputSink given to write output messages to
+   */
+  public IOUtils(OutputSink outputSink) {
+    this.outputSink = outputSink;
+    message = new StringBuilder();
   }
 
   /**
-   * Parse a input file line by line to a list of operations
+   * Parse the input file to a lazy stream of operations
+   * Operations are only scanned when the stream is consumed, so they could be executed
+   * while the rest of the file is still unread. Read from standard input if the input file is '-'
    * Could have blank after each segment
+   * @param inputFile path of the input file
+   * @return stream of operations, should be closed after using to release the input file,
+   * closing it throws UncheckedIOException if the input file could not be closed
+   * @throws IOException if the input file could not be opened
    */
-  public void parseFile() {
-    try(Stream<String> stream = Files.lines(Paths.get(inputFile))) {
-      this.operations = stream
-          .filter(line -> !line.startsWith("//"))
-          .map(line -> {
-        String[] separateStrings = line.trim().split("\\(|\\)|,");
-        if(separateStrings[0].equals(BEGIN)
-            || separateStrings[0].equals(END)
-            || separateStrings[0].equals(BEGIN_RO)) {
-          return new Operation.Builder(separateStrings[0].trim())
-              .transaction(separateStrings[1].trim())
-              .build();
-        } else if(separateStrings[0].equals(DUMP)){
-          return new Operation.Builder(separateStrings[0].trim())
-              .build();
-        } else if(separateStrings[0].equals(READ)) {
-          return new Operation.Builder(separateStrings[0].trim())
-              .transaction(separateStrings[1].trim())
-              .variable(Integer.valueOf(separateStrings[2].trim().substring(1)))
-              .build();
-        } else if(separateStrings[0].equals(WRITE)) {
-          return new Operation.Builder(separateStrings[0].trim())
-              .transaction(separateStrings[1].trim())
-              .variable(Integer.valueOf(separateStrings[2].trim().substring(1)))
-              .writesToValue(Integer.valueOf(separateStrings[3].trim()))
-              .build();
-        } else if(separateStrings[0].equals(FAIL)
-            || separateStrings[0].equals(RECOVER)) {
-          return new Operation.Builder(separateStrings[0].trim())
-              .site(Integer.valueOf(separateStrings[1].trim()))
-              .build();
-        } else {
-          throw new UnsupportedOperationException("This operation is not being supported");
-        }
-      }).collect(Collectors.toList());
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
+  public static Stream<Operation> parseOperations(String inputFile) throws IOException {
+    InputStream input = inputFile.equals(STDIN)
+        ? System.in
+        : Files.newInputStream(Paths.get(inputFile));
+    OperationScanner scanner = new OperationScanner(input);
+    return StreamSupport
+        .stream(Spliterators.spliteratorUnknownSize(scanner, Spliterator.ORDERED), false)
+        .onClose(() -> {
+          try {
+            scanner.close();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
   }
 
   /**
-   * Create an output file under 'TestOutput' directory
+   * Get the default directory output files are written to, 'TestOutput' under working directory
+   * @return path of the directory
+   */
+  public static Path getDefaultOutputDirectory() {
+    return Paths.get(System.getProperty(USER_DIR), OUTPUT_DIRECTORY);
+  }
+
+  /**
+   * Get the output file of an input file
    * The name of the output file would be the same as the name of input file
-   * @throws IOException if the input file is null
+   * @param inputFile path of the input file, '-' for standard input
+   * @param outputDirectory where the output file is written
+   * @return path of the output file
    */
-  public static void createOutputFile() throws IOException{
-    if(inputFile == null) {
-      throw new IOException("Should provide a input file");
-    }
-    String[] filePath = inputFile.split(REGEX);
-    StringBuilder outfile = new StringBuilder()
-        .append(System.getProperty(USER_DIR))
-        .append(OUTPUT_DIRECTORY)
-        .append(filePath[filePath.length - 1]);
-    IOUtils.outputFile = outfile.toString();
-    File file = new File(outputFile);
-    if(Files.exists(Paths.get(outfile.toString()))) {
-      file.delete();
+  public static Path getOutputFile(String inputFile, Path outputDirectory) {
+    if(inputFile.equals(STDIN)) {
+      return outputDirectory.resolve(STDIN_OUTPUT_FILE);
     }
+    return outputDirectory.resolve(Paths.get(inputFile).getFileName());
   }
 
   /**
-   * Write a string to the output file, one string a line
-   * @param str which will be written to the output file
+   * Create an output file, an existing one is replaced
+   * @param outputFile path of the output file
+   * @param isQuiet skip printing messages to console, only write them to the output file
+   * @param isAsync write the output file from a background thread
+   * @return a sink writing messages to the output file
+   * @throws IOException if the output file could not be opened
    */
-  public static void writeToOutputFile(String str) {
-    try(FileWriter fw = new FileWriter(outputFile, true);
-        BufferedWriter bw = new BufferedWriter(fw);
-        PrintWriter out = new PrintWriter(bw)) {
-      out.println(str);
+  public static OutputSink createOutputSink(Path outputFile, boolean isQuiet, boolean isAsync)
+      throws IOException {
+    Files.deleteIfExists(outputFile);
+    OutputSink sink = new BufferedOutputSink(outputFile.toString(), !isQuiet);
+    return isAsync ? new AsyncOutputSink(sink, AsyncOutputSink.DEFAULT_QUEUE_CAPACITY) : sink;
+  }
+
+  /**
+   * Flush all output messages written so far
+   */
+  public void flushOutput() {
+    outputSink.flush();
+  }
+
+  /**
+   * Flush and close the output file when a run finishes
+   */
+  public void close() {
+    outputSink.close();
+  }
+
+  /**
+   * Create the sink used when there's no output file, which only prints to console
+   * @return a sink printing to console
+   */
+  public static OutputSink createConsoleSink() {
+    try {
+      return new BufferedOutputSink(null, true);
     } catch (IOException e) {
-      e.printStackTrace();
+      throw new IllegalStateException(e);
     }
   }
 
@@ -115,80 +141,65 @@ public class IOUtils {
    * Print and write output message when we begin a transaction
    * @param operation used to get transaction name
    */
-  public static void beginOutputMessage(Operation operation) {
-    String outputMessage = String.format("%s begins",
-        operation.getTransaction());
-    printAndWrite(outputMessage);
+  public void beginOutputMessage(Operation operation) {
+    printAndWrite(operation.appendTransaction(newMessage()).append(" begins"));
   }
 
   /**
    * Print and write output message when we begin a read-only transaction
    * @param operation used to get transaction name
    */
-  public static void beginROOutputMessage(Operation operation) {
-    String outputMessage = String.format("Read-only transaction %s begins",
-        operation.getTransaction());
-    printAndWrite(outputMessage);
+  public void beginROOutputMessage(Operation operation) {
+    printAndWrite(operation.appendTransaction(newMessage().append("Read-only transaction "))
+        .append(" begins"));
   }
 
   /**
    * Print and write output message when a site fails
    * @param operation used to get site index
    */
-  public static void failOutputMessage(Operation operation) {
-    String outputMessage = String.format("Site %s fails",
-        operation.getSite());
-    printAndWrite(outputMessage);
+  public void failOutputMessage(Operation operation) {
+    printAndWrite(newMessage().append("Site ").append(operation.getSite()).append(" fails"));
   }
 
   /**
    * Print and write output message when a site recovers
    * @param operation used to get site index
    */
-  public static void recoverOutputMessage(Operation operation) {
-    String outputMessage = String.format("Site %s recovers",
-        operation.getSite());
-    printAndWrite(outputMessage);
+  public void recoverOutputMessage(Operation operation) {
+    printAndWrite(newMessage().append("Site ").append(operation.getSite()).append(" recovers"));
   }
 
   /**
    * Print and write output message when we abort a transaction
    * @param transactionID info to print and write
    */
-  public static void abortOutputMessage(Integer transactionID) {
-    String outputMessage = String.format("%s aborts",
-        "T" + transactionID);
-    printAndWrite(outputMessage);
+  public void abortOutputMessage(int transactionID) {
+    printAndWrite(newMessage().append("T").append(transactionID).append(" aborts"));
   }
 
   /**
    * Print and write output message when we commit a transaction
    * @param transactionID info to print and write
    */
-  public static void commitOutputMessage(Integer transactionID) {
-    String outputMessage = String.format("%s commits",
-        "T" + transactionID);
-    printAndWrite(outputMessage);
+  public void commitOutputMessage(int transactionID) {
+    printAndWrite(newMessage().append("T").append(transactionID).append(" commits"));
   }
 
   /**
    * Print and write message to output file if we could write variable to a new value
    * @param operation used to get important message like variable name and etc
    */
-  public static void canWriteOutputMessage(Operation operation) {
-    String outputMessage = buildWriteOutputString(operation,
-        "%s can write variable %s to new value %s");
-    printAndWrite(outputMessage);
+  public void canWriteOutputMessage(Operation operation) {
+    printAndWrite(buildWriteOutputMessage(operation, " can write variable "));
   }
 
   /**
    * Print and write message to output file if we could not write variable to a new value
    * @param operation used to get important message like variable name and etc
    */
-  public static void cannotWriteOutputMessage(Operation operation) {
-    String outputMessage = buildWriteOutputString(operation,
-        "%s cannot write variable %s to new value %s");
-    printAndWrite(outputMessage);
+  public void cannotWriteOutputMessage(Operation operation) {
+    printAndWrite(buildWriteOutputMessage(operation, " cannot write variable "));
   }
 
   /**
@@ -197,45 +208,52 @@ public class IOUtils {
    * @param variable used to get variable name
    * @param value used to get value of the variable
    */
-  public static void canReadOutputMessage(
+  public void canReadOutputMessage(
       Transaction transaction,
-      Integer variable,
-      Integer value) {
-    String outputMessage = String.format("%s can read variable %s, the value is %s",
-        transaction.getName(), "x" + variable, value);
-    printAndWrite(outputMessage);
+      int variable,
+      int value) {
+    printAndWrite(newMessage().append(transaction.getName()).append(" can read variable x")
+        .append(variable).append(", the value is ").append(value));
   }
 
   /**
    * Print and write message to output file if we could not read variable to a new value
    * @param operation used to get important message like variable name and etc
    */
-  public static void cannotReadOutputMessage(Operation operation) {
-    String outputMessage = String.format("%s cannot read variable %s",
-        operation.getTransaction(), operation.getVariable().toString());
-    printAndWrite(outputMessage);
+  public void cannotReadOutputMessage(Operation operation) {
+    printAndWrite(operation.appendTransaction(newMessage()).append(" cannot read variable ")
+        .append(operation.getVariable()));
   }
 
   /**
    * Build output message for write operation
    * @param operation used to get important messages like transaction name and etc.
-   * @param str output message format
+   * @param verb what happens to the write, between transaction name and variable
    * @return Well built output message
    */
-  private static String buildWriteOutputString(Operation operation, String str) {
-    return String.format(str,
-        operation.getTransaction(),
-        operation.getVariable().toString(),
-        operation.getWritesToValue().toString());
+  private CharSequence buildWriteOutputMessage(Operation operation, String verb) {
+    return operation.appendTransaction(newMessage()).append(verb)
+        .append(operation.getVariable()).append(" to new value ")
+        .append(operation.getWritesToValue());
+  }
+
+  /**
+   * Start building an output message in the builder shared by all messages
+   * Sinks copy a message before they return, so the builder could be reused by the next one
+   * @return the empty builder
+   */
+  private StringBuilder newMessage() {
+    message.setLength(0);
+    return message;
   }
 
   /**
    * Print the output message to console and write it to output file
+   * The sink decides whether to echo it to console, it's skipped in quiet mode
    * @param outputMessage given to print and write
    */
-  public static void printAndWrite(String outputMessage) {
-    System.out.println(outputMessage);
-    writeToOutputFile(outputMessage);
+  public void printAndWrite(CharSequence outputMessage) {
+    outputSink.write(outputMessage);
   }
 
 }
@@ -0,0 +1,162 @@
+package cs.nyu.edu.adb;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+
+  // every power of two is split into this many buckets, so a bucket is at most 1/8 wide
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private LongAdder[] buckets;
+  private LongAdder count;
+  private LongAdder sum;
+  private LongAccumulator max;
+
+  /**
+   * Create an empty histogram
+   * Recording only adds to striped counters, so threads recording at the same time
+   * don't contend, and nothing is allocated once the buckets exist
+   */
+  public LatencyHistogram() {
+    buckets = new LongAdder[BUCKETS];
+    for(int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+    count = new LongAdder();
+    sum = new LongAdder();
+    max = new LongAccumulator(Math::max, 0);
+  }
+
+  /**
+   * Record one latency
+   * @param nanos latency in nanoseconds, negative values are recorded as 0
+   */
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    buckets[bucketOf(value)].increment();
+    count.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Take a snapshot of the latencies recorded so far
+   * Recording could go on meanwhile, the snapshot might then miss some of them
+   * @return the snapshot
+   */
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    for(int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets[i].sum();
+    }
+    return new Snapshot(counts, count.sum(), sum.sum(), max.get());
+  }
+
+  /**
+   * Find the bucket of a value
+   * Values smaller than SUB_BUCKETS have buckets of their own, larger ones share a bucket
+   * with values having the same highest bit and the same SUB_BUCKET_BITS bits below it
+   * @param value given to find the bucket, not negative
+   * @return index of the bucket
+   */
+  private static int bucketOf(long value) {
+    if(value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Get the largest value falling into a bucket
+   * @param bucket index of the bucket
+   * @return the largest value of the bucket
+   */
+  private static long upperBoundOf(int bucket) {
+    if(bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+
+  public static class Snapshot {
+
+    private long[] counts;
+    private long count;
+    private long sum;
+    private long max;
+
+    private Snapshot(long[] counts, long count, long sum, long max) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public double getMean() {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Get a percentile of the recorded latencies
+     * It's the upper bound of the bucket the percentile falls into, so it's at most 1/8 larger
+     * than the exact one, and never larger than the max
+     * @param percentile between 0 and 100
+     * @return latency in nanoseconds, 0 if nothing is recorded
+     */
+    public long getPercentile(double percentile) {
+      if(percentile < 0 || percentile > 100) {
+        throw new IllegalArgumentException("Percentile should be between 0 and 100");
+      }
+      long total = 0;
+      for(long bucketCount : counts) {
+        total += bucketCount;
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+      long seen = 0;
+      for(int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if(seen >= rank) {
+          return Math.min(upperBoundOf(i), max);
+        }
+      }
+      return 0;
+    }
+
+    public long getMedian() {
+      return getPercentile(50);
+    }
+
+    public long getP99() {
+      return getPercentile(99);
+    }
+
+    public long getP999() {
+      return getPercentile(99.9);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count=%s mean=%.0fns p50=%sns p99=%sns p99.9=%sns max=%sns",
+          count, getMean(), getMedian(), getP99(), getP999(), max);
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package cs.nyu.edu.adb;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Try the copy whose site holds the fewest locks first
+ * Sites holding equally many locks are tried by the number of reads they have served,
+ * so idle sites take turns instead of the lowest one taking everything
+ */
+public class LeastLoadedSelector implements ReplicaSelector {
+
+  private static final Comparator<Site> BY_LOAD = Comparator
+      .comparingInt(Site::getLockCount)
+      .thenComparingLong(Site::getServedReads)
+      .thenComparing(Site::getIndex);
+
+  @Override
+  public List<Site> order(int variable, Transaction transaction, List<Site> copies) {
+    copies.sort(BY_LOAD);
+    return copies;
+  }
+}
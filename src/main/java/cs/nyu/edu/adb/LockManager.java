@@ -1,37 +1,67 @@
 package cs.nyu.edu.adb;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class LockManager {
 
-  // variable -> transaction index
-  private Map<Integer, List<Integer>> readLocks;
-  private Map<Integer, Integer> writeLock;
+  // written in the lock table when nobody holds the write lock of a variable
+  public static final int NO_TRANSACTION = -1;
 
-  public LockManager() {
-    readLocks = new HashMap<>();
-    writeLock = new HashMap<>();
-  }
+  public static final int DEFAULT_CAPACITY = 32;
+  private static final int INITIAL_READERS = 2;
+
+  // variable -> transaction index holding the write lock, or NO_TRANSACTION
+  private int[] writers;
+
+  // variable -> transaction indexes holding read locks, the first readerCounts[variable] are
+  // used. Arrays are kept once allocated, so locking a variable again allocates nothing
+  private int[][] readers;
+  private int[] readerCounts;
+
+  // transaction index -> variables it holds read or write lock on, each only once
+  private Map<Integer, HeldVariables> heldVariables;
 
-  public Map<Integer, List<Integer>> getReadLocks() {
-    return readLocks;
+  // counts granted locks, shared by lock tables of all sites
+  private EngineMetrics metrics;
+
+  // number of read and write locks held, only changed by the thread of the site
+  // but read by others to find less loaded copies
+  private volatile int lockCount;
+
+  public LockManager() {
+    this(DEFAULT_CAPACITY, new EngineMetrics());
   }
 
-  public Map<Integer, Integer> getWriteLock() {
-    return writeLock;
+  /**
+   * Create an empty lock table
+   * @param capacity number of variables the table is sized for, it grows if more are locked
+   * @param metrics given to count granted locks
+   */
+  public LockManager(int capacity, EngineMetrics metrics) {
+    this.metrics = metrics;
+    writers = new int[capacity + 1];
+    Arrays.fill(writers, NO_TRANSACTION);
+    readers = new int[capacity + 1][];
+    readerCounts = new int[capacity + 1];
+    heldVariables = new HashMap<>();
   }
 
   /**
-   * Check if we could read variable from this site
+   * Check if we could read variable from this site, nothing is recorded
    * @param variable given to read
    * @param transaction given to check lock conflicts
    * @return true if can read, false if we can't
    */
-  public boolean canRead(Integer variable, Integer transaction) {
-    return (!writeLock.containsKey(variable) || writeLock.get(variable).equals(transaction));
+  public boolean canRead(int variable, int transaction) {
+    int writer = getWriter(variable);
+    return writer == NO_TRANSACTION || writer == transaction;
   }
 
   /**
@@ -39,13 +69,27 @@ public class LockManager {
    * @param variable given to add lock on
    * @param transaction given to add lock
    */
-  public void addReadLock(Integer variable, Integer transaction) {
-    if(!readLocks.containsKey(variable)) {
-      readLocks.put(variable, new ArrayList<>());
-      readLocks.get(variable).add(transaction);
-    } else if(!readLocks.get(variable).contains(transaction)) {
-      readLocks.get(variable).add(transaction);
+  public void addReadLock(int variable, int transaction) {
+    ensureCapacity(variable);
+    if(isReader(variable, transaction)) {
+      return;
     }
+    metrics.recordReadLock();
+    lockCount++;
+    if(writers[variable] != transaction) {
+      hold(variable, transaction);
+    }
+    int count = readerCounts[variable];
+    int[] variableReaders = readers[variable];
+    if(variableReaders == null) {
+      variableReaders = new int[INITIAL_READERS];
+      readers[variable] = variableReaders;
+    } else if(count == variableReaders.length) {
+      variableReaders = Arrays.copyOf(variableReaders, 2 * count);
+      readers[variable] = variableReaders;
+    }
+    variableReaders[count] = transaction;
+    readerCounts[variable] = count + 1;
   }
 
   /**
@@ -53,21 +97,206 @@ public class LockManager {
    * @param variable given to add lock on
    * @param transaction given to add lock
    */
-  public void addWriteLock(Integer variable, Integer transaction) {
-    writeLock.put(variable, transaction);
+  public void addWriteLock(int variable, int transaction) {
+    ensureCapacity(variable);
+    if(writers[variable] == transaction) {
+      return;
+    }
+    if(!isReader(variable, transaction)) {
+      hold(variable, transaction);
+    }
+    metrics.recordWriteLock();
+    lockCount++;
+    writers[variable] = transaction;
   }
 
   /**
-   * Check if we could write variable to this site
+   * Check if we could write variable to this site, nothing is recorded
    * @param variable given to write
    * @param transaction given to check lock conflicts
    * @return true if can write, false if we can't
    */
-  public boolean canWrite(Integer variable, Integer transaction) {
-    return (readLocks.containsKey(variable)
-        && readLocks.get(variable).size() == 1
-        && readLocks.get(variable).contains(transaction) ||
-        (!readLocks.containsKey(variable) && !writeLock.containsKey(variable)));
+  public boolean canWrite(int variable, int transaction) {
+    if(variable >= writers.length) {
+      return true;
+    }
+    // the transaction could upgrade its own read lock, or write again what it has write locked
+    int count = readerCounts[variable];
+    return count == 1 && readers[variable][0] == transaction
+        || count == 0 && (writers[variable] == NO_TRANSACTION
+        || writers[variable] == transaction);
+  }
+
+  /**
+   * Get the transaction holding the write lock of a variable
+   * @param variable given to check
+   * @return index of the transaction, NO_TRANSACTION if the variable is not write locked
+   */
+  public int getWriter(int variable) {
+    return variable < writers.length ? writers[variable] : NO_TRANSACTION;
+  }
+
+  /**
+   * Get the number of locks held in this table, a read and a write lock of the same
+   * transaction on a variable count as two
+   * @return number of locks
+   */
+  public int getLockCount() {
+    return lockCount;
+  }
+
+  public boolean isWriteLocked(int variable) {
+    return getWriter(variable) != NO_TRANSACTION;
+  }
+
+  /**
+   * Get transactions holding read locks on a variable
+   * @param variable given to check
+   * @return a copy of the readers, in the order they got the lock
+   */
+  public List<Integer> getReaders(int variable) {
+    if(variable >= readerCounts.length) {
+      return Collections.emptyList();
+    }
+    List<Integer> transactions = new ArrayList<>(readerCounts[variable]);
+    for(int i = 0; i < readerCounts[variable]; i++) {
+      transactions.add(readers[variable][i]);
+    }
+    return transactions;
+  }
+
+  /**
+   * Get transactions which hold any lock
+   * @return indexes of the transactions in ascending order
+   */
+  public Set<Integer> getLockHolders() {
+    return new TreeSet<>(heldVariables.keySet());
+  }
+
+  /**
+   * Get variables the given transaction holds read or write lock on
+   * @param transaction given to find variables
+   * @return a copy of the variables held by the transaction
+   */
+  public List<Integer> getHeldVariables(int transaction) {
+    HeldVariables held = heldVariables.get(transaction);
+    List<Integer> variables = new ArrayList<>(held == null ? 0 : held.size);
+    for(int i = 0; held != null && i < held.size; i++) {
+      variables.add(held.variables[i]);
+    }
+    return variables;
+  }
+
+  /**
+   * Get variables the given transaction holds write lock on
+   * @param transaction given to find variables
+   * @return variables written by the transaction
+   */
+  public List<Integer> getWriteLockedVariables(int transaction) {
+    List<Integer> variables = new ArrayList<>();
+    HeldVariables held = heldVariables.get(transaction);
+    for(int i = 0; held != null && i < held.size; i++) {
+      if(writers[held.variables[i]] == transaction) {
+        variables.add(held.variables[i]);
+      }
+    }
+    return variables;
+  }
+
+  /**
+   * Release all locks held by the given transaction
+   * Only variables the transaction holds are visited
+   * @param transaction given to release locks
+   */
+  public void releaseAllLocks(int transaction) {
+    HeldVariables held = heldVariables.remove(transaction);
+    if(held == null) {
+      return;
+    }
+    int releasedLocks = 0;
+    for(int i = 0; i < held.size; i++) {
+      int variable = held.variables[i];
+      if(removeReader(variable, transaction)) {
+        releasedLocks++;
+      }
+      if(writers[variable] == transaction) {
+        writers[variable] = NO_TRANSACTION;
+        releasedLocks++;
+      }
+    }
+    lockCount -= releasedLocks;
+  }
+
+  /**
+   * Erase all the locks, used when the site fails
+   */
+  public void clear() {
+    Arrays.fill(writers, NO_TRANSACTION);
+    Arrays.fill(readerCounts, 0);
+    heldVariables.clear();
+    lockCount = 0;
+  }
+
+  private boolean isReader(int variable, int transaction) {
+    int[] variableReaders = readers[variable];
+    for(int i = 0; i < readerCounts[variable]; i++) {
+      if(variableReaders[i] == transaction) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Remove a reader of a variable, the order of the remaining ones is kept
+   * @param variable given to find readers
+   * @param transaction given to remove
+   * @return true if the transaction was a reader
+   */
+  private boolean removeReader(int variable, int transaction) {
+    int[] variableReaders = readers[variable];
+    int count = readerCounts[variable];
+    for(int i = 0; i < count; i++) {
+      if(variableReaders[i] == transaction) {
+        System.arraycopy(variableReaders, i + 1, variableReaders, i, count - i - 1);
+        readerCounts[variable] = count - 1;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Record that a transaction holds a lock on a variable it held nothing on before
+   * @param variable given to record
+   * @param transaction which gets the lock
+   */
+  private void hold(int variable, int transaction) {
+    heldVariables.computeIfAbsent(transaction, key -> new HeldVariables()).add(variable);
+  }
+
+  private void ensureCapacity(int variable) {
+    if(variable < writers.length) {
+      return;
+    }
+    int capacity = Math.max(variable + 1, 2 * writers.length);
+    int oldCapacity = writers.length;
+    writers = Arrays.copyOf(writers, capacity);
+    Arrays.fill(writers, oldCapacity, capacity, NO_TRANSACTION);
+    readers = Arrays.copyOf(readers, capacity);
+    readerCounts = Arrays.copyOf(readerCounts, capacity);
+  }
+
+  private static class HeldVariables {
+    private int[] variables = new int[INITIAL_READERS];
+    private int size;
+
+    private void add(int variable) {
+      if(size == variables.length) {
+        variables = Arrays.copyOf(variables, 2 * size);
+      }
+      variables[size++] = variable;
+    }
   }
 
 }
@@ -0,0 +1,180 @@
+package cs.nyu.edu.adb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LockWaitQueue {
+
+  // variable -> FIFO queue of operations waiting for a lock on it
+  private Map<Integer, Queue> queues;
+
+  // transaction index -> its queued requests, used to remove them without scanning queues
+  private Map<Integer, List<Request>> requestsByTransaction;
+
+  // told the depth of a queue whenever it changes
+  private EngineMetrics metrics;
+
+  public LockWaitQueue() {
+    this(new EngineMetrics());
+  }
+
+  /**
+   * Create empty queues
+   * @param metrics given to record the depths of queues
+   */
+  public LockWaitQueue(EngineMetrics metrics) {
+    queues = new HashMap<>();
+    requestsByTransaction = new HashMap<>();
+    this.metrics = metrics;
+  }
+
+  /**
+   * Append an operation to the queue of the variable it waits for
+   * Nothing happens if the operation is already waiting there
+   * @param variable this operation is waiting for
+   * @param operation which should be blocked
+   */
+  public void enqueue(Integer variable, Operation operation) {
+    if(contains(variable, operation)) {
+      return;
+    }
+    Request request = new Request(variable, operation);
+    Queue queue = queues.computeIfAbsent(variable, key -> new Queue());
+    queue.append(request);
+    metrics.recordWaitingQueueDepth(variable, queue.size);
+    requestsByTransaction.computeIfAbsent(operation.getTransactionID(), key -> new ArrayList<>())
+        .add(request);
+  }
+
+  /**
+   * Check if an operation is waiting for the given variable
+   * Only requests of the operation's transaction are looked at
+   * @param variable given to check
+   * @param operation given to find
+   * @return true if the operation is in the queue of the variable
+   */
+  public boolean contains(Integer variable, Operation operation) {
+    return findRequest(variable, operation) != null;
+  }
+
+  /**
+   * Check if any operation is waiting for the given variable
+   * @param variable given to check
+   * @return true if the queue of the variable is not empty
+   */
+  public boolean hasWaiting(int variable) {
+    // nothing is boxed while no operation waits, which is the usual case
+    return !queues.isEmpty() && queues.containsKey(variable);
+  }
+
+  /**
+   * Get the operation at the head of the queue of a variable
+   * @param variable given to find the queue
+   * @return the operation which waits longest, null if nobody waits
+   */
+  public Operation peek(Integer variable) {
+    Queue queue = queues.get(variable);
+    return queue == null ? null : queue.head.operation;
+  }
+
+  /**
+   * Remove an operation from the queue of a variable once it has been granted
+   * @param variable given to find the queue
+   * @param operation given to remove
+   */
+  public void remove(Integer variable, Operation operation) {
+    Request request = findRequest(variable, operation);
+    if(request == null) {
+      return;
+    }
+    List<Request> requests = requestsByTransaction.get(operation.getTransactionID());
+    requests.remove(request);
+    if(requests.isEmpty()) {
+      requestsByTransaction.remove(operation.getTransactionID());
+    }
+    unlink(request);
+  }
+
+  /**
+   * Remove all the operations of a transaction from the queues
+   * @param transactionID given to remove
+   */
+  public void removeTransaction(Integer transactionID) {
+    List<Request> requests = requestsByTransaction.remove(transactionID);
+    if(requests != null) {
+      requests.forEach(this::unlink);
+    }
+  }
+
+  private Request findRequest(Integer variable, Operation operation) {
+    List<Request> requests = requestsByTransaction.get(operation.getTransactionID());
+    if(requests == null) {
+      return null;
+    }
+    for(Request request : requests) {
+      if(request.variable == variable && request.operation.equals(operation)) {
+        return request;
+      }
+    }
+    return null;
+  }
+
+  private void unlink(Request request) {
+    Queue queue = queues.get(request.variable);
+    queue.unlink(request);
+    if(queue.head == null) {
+      queues.remove(request.variable);
+    }
+    metrics.recordWaitingQueueDepth(request.variable, queue.size);
+  }
+
+  /**
+   * An operation waiting in the queue of a variable, linked both ways so it leaves in O(1)
+   */
+  private static class Request {
+    private final int variable;
+    private final Operation operation;
+    private Request previous;
+    private Request next;
+
+    private Request(int variable, Operation operation) {
+      this.variable = variable;
+      this.operation = operation;
+    }
+  }
+
+  private static class Queue {
+    private Request head;
+    private Request tail;
+    private int size;
+
+    private void append(Request request) {
+      if(tail == null) {
+        head = request;
+      } else {
+        tail.next = request;
+        request.previous = tail;
+      }
+      tail = request;
+      size++;
+    }
+
+    private void unlink(Request request) {
+      if(request.previous == null) {
+        head = request.next;
+      } else {
+        request.previous.next = request.next;
+      }
+      if(request.next == null) {
+        tail = request.previous;
+      } else {
+        request.next.previous = request.previous;
+      }
+      request.previous = null;
+      request.next = null;
+      size--;
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package cs.nyu.edu.adb;
+
+import java.util.List;
+
+/**
+ * Try copies in ascending order of site index
+ * Reads of replicated variables all go to the lowest site which is up, so its lock table
+ * takes every read lock, but the output is the easiest to follow
+ */
+public class LowestIndexSelector implements ReplicaSelector {
+
+  @Override
+  public List<Site> order(int variable, Transaction transaction, List<Site> copies) {
+    return copies;
+  }
+}
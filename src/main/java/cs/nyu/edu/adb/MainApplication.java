@@ -1,42 +1,124 @@
 package cs.nyu.edu.adb;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public class MainApplication {
 
+  public static final String QUIET = "--quiet";
+  public static final String ASYNC = "--async";
+  public static final String SITES = "--sites=";
+  public static final String VARIABLES = "--variables=";
+  public static final String REPLICATION = "--replication=";
+  public static final String READ_QUORUM = "--read-quorum=";
+  public static final String WRITE_QUORUM = "--write-quorum=";
+  public static final String CONCURRENT = "--concurrent";
+  public static final String LOG_DIRECTORY = "--log-dir=";
+  public static final String GROUP_COMMIT = "--group-commit=";
+  public static final String CHECKPOINT_INTERVAL = "--checkpoint-interval=";
+  public static final String DEADLOCK_POLICY = "--deadlock=";
+  public static final String LOCK_TIMEOUT = "--lock-timeout=";
+  public static final String REPLICA_SELECTOR = "--replica-selector=";
+  public static final String CONCURRENCY_CONTROL = "--concurrency=";
+  public static final String THREADS = "--threads=";
+  public static final String OUTPUT_DIRECTORY = "--output-dir=";
+
   public static void main(String[] args) {
 
-    if(args.length == 0) {
+    List<String> inputFiles = new ArrayList<>();
+    Topology.Builder topologyBuilder = new Topology.Builder();
+    EngineConfig.Builder engineConfigBuilder = new EngineConfig.Builder();
+    BatchRunner.Builder batchRunnerBuilder = new BatchRunner.Builder();
+    Integer threadCount = null;
+    String deadlockPolicy = DeadlockPolicy.WAITS_FOR;
+    int lockTimeout = TimeoutPolicy.DEFAULT_TIMEOUT;
+    for(String arg : args) {
+      if(arg.equals(QUIET)) {
+        batchRunnerBuilder.quiet(true);
+      } else if(arg.equals(ASYNC)) {
+        batchRunnerBuilder.async(true);
+      } else if(arg.equals(CONCURRENT)) {
+        engineConfigBuilder.concurrentSites(true);
+      } else if(arg.startsWith(LOG_DIRECTORY)) {
+        // every input file keeps its logs in a directory of its own under it
+        engineConfigBuilder.logDirectory(Paths.get(arg.substring(LOG_DIRECTORY.length())));
+      } else if(arg.startsWith(GROUP_COMMIT)) {
+        engineConfigBuilder.groupCommitSize(Integer.parseInt(arg.substring(GROUP_COMMIT.length())));
+      } else if(arg.startsWith(CHECKPOINT_INTERVAL)) {
+        engineConfigBuilder.checkpointInterval(
+            Integer.parseInt(arg.substring(CHECKPOINT_INTERVAL.length())));
+      } else if(arg.startsWith(DEADLOCK_POLICY)) {
+        deadlockPolicy = arg.substring(DEADLOCK_POLICY.length());
+      } else if(arg.startsWith(LOCK_TIMEOUT)) {
+        lockTimeout = Integer.parseInt(arg.substring(LOCK_TIMEOUT.length()));
+      } else if(arg.startsWith(REPLICA_SELECTOR)) {
+        engineConfigBuilder.replicaSelector(
+            ReplicaSelector.forName(arg.substring(REPLICA_SELECTOR.length())));
+      } else if(arg.startsWith(CONCURRENCY_CONTROL)) {
+        engineConfigBuilder.concurrencyControl(
+            ConcurrencyControl.fromName(arg.substring(CONCURRENCY_CONTROL.length())));
+      } else if(arg.startsWith(THREADS)) {
+        threadCount = Integer.parseInt(arg.substring(THREADS.length()));
+      } else if(arg.startsWith(OUTPUT_DIRECTORY)) {
+        batchRunnerBuilder.outputDirectory(Paths.get(arg.substring(OUTPUT_DIRECTORY.length())));
+      } else if(arg.startsWith(SITES)) {
+        topologyBuilder.siteCount(Integer.parseInt(arg.substring(SITES.length())));
+      } else if(arg.startsWith(VARIABLES)) {
+        topologyBuilder.variableCount(Integer.parseInt(arg.substring(VARIABLES.length())));
+      } else if(arg.startsWith(REPLICATION)) {
+        topologyBuilder.replicationFactor(Integer.parseInt(arg.substring(REPLICATION.length())));
+      } else if(arg.startsWith(READ_QUORUM)) {
+        topologyBuilder.readQuorum(Integer.parseInt(arg.substring(READ_QUORUM.length())));
+      } else if(arg.startsWith(WRITE_QUORUM)) {
+        topologyBuilder.writeQuorum(Integer.parseInt(arg.substring(WRITE_QUORUM.length())));
+      } else {
+        inputFiles.add(arg);
+      }
+    }
+    engineConfigBuilder.deadlockPolicy(DeadlockPolicy.forName(deadlockPolicy, lockTimeout));
+
+    // directories are replayed on all processors unless told otherwise, test files one by one.
+    // Every input file given is replayed, directories are replaced by the input files in them
+    if(inputFiles.isEmpty()) {
       for (int i = 1; i < 12; i++) {
-        // Parse input file, get a list of operations
-        IOUtils ioUtils = new IOUtils();
-        IOUtils.inputFile = String.format("./TestInput/test%s.txt", i);
+        inputFiles.add(String.format("./TestInput/test%s.txt", i));
+      }
+    } else {
+      List<String> givenInputs = inputFiles;
+      inputFiles = new ArrayList<>();
+      for(String input : givenInputs) {
+        if(!Files.isDirectory(Paths.get(input))) {
+          inputFiles.add(input);
+          continue;
+        }
         try {
-          IOUtils.createOutputFile();
+          inputFiles.addAll(BatchRunner.listInputFiles(Paths.get(input)));
         } catch (IOException e) {
-          e.printStackTrace();
+          throw new UncheckedIOException(e);
+        }
+        if(threadCount == null) {
+          threadCount = Runtime.getRuntime().availableProcessors();
         }
-        ioUtils.parseFile();
-
-        // send all parsed operations to transaction manager, and start running
-        TransactionManager transactionManager = new TransactionManager(ioUtils.operations);
-        transactionManager.run();
-      }
-    } else {
-
-      // Parse input file, get a list of operations
-      IOUtils ioUtils = new IOUtils();
-      IOUtils.inputFile = args[0];
-      try {
-        IOUtils.createOutputFile();
-      } catch (IOException e) {
-        e.printStackTrace();
       }
-      ioUtils.parseFile();
-
-      // send all parsed operations to transaction manager, and start running
-      TransactionManager transactionManager = new TransactionManager(ioUtils.operations);
-      transactionManager.run();
+    }
+    Map<String, Exception> failures = batchRunnerBuilder
+        .topology(topologyBuilder.build())
+        .engineConfig(engineConfigBuilder.build())
+        .threadCount(threadCount == null ? 1 : threadCount)
+        .build()
+        .run(inputFiles);
+    if(!failures.isEmpty()) {
+      // one line per input file, lines of parallel runs could not interleave
+      failures.forEach((inputFile, failure) ->
+          System.err.println(String.format("%s failed: %s", inputFile, failure)));
+      System.err.println(String.format("%s of %s input files failed",
+          failures.size(), inputFiles.size()));
+      System.exit(1);
     }
   }
 }
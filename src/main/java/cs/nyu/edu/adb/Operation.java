@@ -1,43 +1,56 @@
 package cs.nyu.edu.adb;
 
-import java.util.Objects;
-
+/**
+ * An operation of the input, fields are parsed once when it's built
+ * Transaction, variable, site and value are kept as primitive ints, fields an operation
+ * doesn't have are 0. Operations scanned from input only get the transaction index,
+ * the name is built from it the first time it's asked for
+ */
 public class Operation {
 
-  private String name;
+  private OperationType type;
   private String transaction;
-  private Integer variable;
-  private Integer writesToValue;
-  private Integer site;
+  private int transactionID;
+  private int variable;
+  private int writesToValue;
+  private int site;
 
   public static class Builder {
 
-    private String name;
+    private OperationType type;
     private String transaction;
-    private Integer variable;
-    private Integer writesToValue;
-    private Integer site;
+    private int transactionID;
+    private int variable;
+    private int writesToValue;
+    private int site;
 
-    Builder(String name) {
-      this.name = name;
+    Builder(OperationType type) {
+      this.type = type;
     }
 
     public Builder transaction(String transaction) {
       this.transaction = transaction;
+      this.transactionID = Integer.parseInt(transaction.substring(1));
+      return this;
+    }
+
+    public Builder transaction(String transaction, int transactionID) {
+      this.transaction = transaction;
+      this.transactionID = transactionID;
       return this;
     }
 
-    public Builder variable(Integer variable) {
+    public Builder variable(int variable) {
       this.variable = variable;
       return this;
     }
 
-    public Builder writesToValue(Integer writesToValue) {
+    public Builder writesToValue(int writesToValue) {
       this.writesToValue = writesToValue;
       return this;
     }
 
-    public Builder site(Integer site) {
+    public Builder site(int site) {
       this.site = site;
       return this;
     }
@@ -48,45 +61,102 @@ public class Operation {
 
   }
 
+  /**
+   * Create an operation scanned from input, without going through a builder
+   * @param type of the operation
+   * @param transactionID index of the transaction, named like 'T1' from it
+   * @param variable index of the variable
+   * @param writesToValue value written
+   * @param site index of the site
+   */
+  Operation(OperationType type, int transactionID, int variable, int writesToValue, int site) {
+    this.type = type;
+    this.transactionID = transactionID;
+    this.variable = variable;
+    this.writesToValue = writesToValue;
+    this.site = site;
+  }
+
   private Operation(Builder builder) {
-    this.name = builder.name;
+    this.type = builder.type;
     this.transaction = builder.transaction;
+    this.transactionID = builder.transactionID;
     this.variable = builder.variable;
     this.writesToValue = builder.writesToValue;
     this.site = builder.site;
   }
 
+  /**
+   * Get the name of the transaction, null if the operation has none
+   * @return name like 'T1'
+   */
   public String getTransaction() {
+    // strings are immutable, so threads racing here only build equal names
+    if(transaction == null && type.hasTransaction()) {
+      transaction = "T" + transactionID;
+    }
     return transaction;
   }
 
-  public Integer getVariable() {
+  /**
+   * Append the name of the transaction to a message, without building it as a String
+   * @param message given to append to
+   * @return the message
+   */
+  StringBuilder appendTransaction(StringBuilder message) {
+    return transaction != null
+        ? message.append(transaction)
+        : message.append('T').append(transactionID);
+  }
+
+  public int getTransactionID() {
+    return transactionID;
+  }
+
+  public int getVariable() {
     return variable;
   }
 
-  public Integer getWritesToValue() {
+  public int getWritesToValue() {
     return writesToValue;
   }
 
+  public OperationType getType() {
+    return type;
+  }
+
   public String getName() {
-    return name;
+    return type.getName();
   }
 
-  public Integer getSite() {
+  public int getSite() {
     return site;
   }
 
+  /**
+   * Operations are compared by transaction index, names are 'T' and the index,
+   * so no name has to be built to compare scanned operations
+   */
   @Override
   public boolean equals(Object o) {
     if (!(o instanceof Operation)) {
       return false;
     }
     Operation c = (Operation) o;
-    return Objects.equals(c.name, name)
-        && Objects.equals(c.transaction, transaction)
-        && Objects.equals(c.variable, variable)
-        && Objects.equals(c.writesToValue, writesToValue)
-        && Objects.equals(c.site, site);
+    return c.type == type
+        && c.transactionID == transactionID
+        && c.variable == variable
+        && c.writesToValue == writesToValue
+        && c.site == site;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = type.hashCode();
+    result = 31 * result + transactionID;
+    result = 31 * result + variable;
+    result = 31 * result + writesToValue;
+    return 31 * result + site;
   }
 
 }
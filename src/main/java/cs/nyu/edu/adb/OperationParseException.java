@@ -0,0 +1,23 @@
+package cs.nyu.edu.adb;
+
+public class OperationParseException extends IllegalArgumentException {
+
+  private static final long serialVersionUID = 1L;
+
+  private int line;
+  private int column;
+
+  public OperationParseException(int line, int column, String message) {
+    super(String.format("line %s, column %s: %s", line, column, message));
+    this.line = line;
+    this.column = column;
+  }
+
+  public int getLine() {
+    return line;
+  }
+
+  public int getColumn() {
+    return column;
+  }
+}
@@ -0,0 +1,554 @@
+package cs.nyu.edu.adb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class OperationScanner implements Iterator<Operation>, Closeable {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int END_OF_INPUT = -1;
+  // put right after the bytes in the buffer, no token contains it so every loop stops there
+  private static final byte SENTINEL = 0;
+  private static final int MAX_NAME_LENGTH = 16;
+  // numbers with this many digits at most could not overflow an int
+  private static final int MAX_SAFE_DIGITS = 9;
+  // reads and writes are most of the input, so their names are compared first
+  private static final OperationType[] OPERATION_TYPES = {
+      OperationType.READ, OperationType.WRITE, OperationType.BEGIN, OperationType.END,
+      OperationType.BEGIN_RO, OperationType.DUMP, OperationType.FAIL, OperationType.RECOVER};
+  // names of OPERATION_TYPES as bytes, compared with the scanned name without any String
+  private static final byte[][] OPERATION_NAMES = new byte[OPERATION_TYPES.length][];
+  // ASCII letter -> operation named with just this letter, like 'R', found without a loop
+  private static final OperationType[] SINGLE_LETTER_TYPES = new OperationType[128];
+
+  static {
+    for(int i = 0; i < OPERATION_TYPES.length; i++) {
+      OPERATION_NAMES[i] = OPERATION_TYPES[i].getName().getBytes(StandardCharsets.US_ASCII);
+      if(OPERATION_NAMES[i].length == 1) {
+        SINGLE_LETTER_TYPES[OPERATION_NAMES[i][0]] = OPERATION_TYPES[i];
+      }
+    }
+  }
+
+  private InputStream input;
+  private byte[] buffer;
+  private int position;
+  private int limit;
+
+  // line of the next byte and where the line starts, used for error messages.
+  // Offsets count bytes from the start of the input, columns are only worked out
+  // from them when there's an error, so reading a byte is just moving the position
+  private int line;
+  private long lineStart;
+  // offset of the first byte in the buffer
+  private long bufferStart;
+
+  private byte[] name;
+  // value of the number scanned last by scanBufferedDigits
+  private int number;
+  private Operation nextOperation;
+
+  /**
+   * Scan operations from the input in one pass, without regex, splitting lines or decoding
+   * characters. Operations are ASCII, so bytes are scanned as they are. Other characters
+   * could only be in comments, which are skipped, columns count bytes
+   * Blank lines and lines starting with '//' are skipped
+   * @param input given to read bytes from
+   */
+  public OperationScanner(InputStream input) {
+    this.input = input;
+    // one more byte for the sentinel
+    buffer = new byte[BUFFER_SIZE + 1];
+    position = 0;
+    limit = 0;
+    line = 1;
+    lineStart = 0;
+    bufferStart = 0;
+    name = new byte[MAX_NAME_LENGTH];
+  }
+
+  @Override
+  public boolean hasNext() {
+    if(nextOperation == null) {
+      nextOperation = scanOperation();
+    }
+    return nextOperation != null;
+  }
+
+  @Override
+  public Operation next() {
+    if(!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Operation operation = nextOperation;
+    nextOperation = null;
+    return operation;
+  }
+
+  @Override
+  public void close() throws IOException {
+    input.close();
+  }
+
+  /**
+   * Scan the next operation, skipping blank lines and comments
+   * @return the next operation, or null if there's no more input
+   */
+  private Operation scanOperation() {
+    Operation operation = scanBufferedOperation();
+    if(operation != null) {
+      return operation;
+    }
+    while(true) {
+      skipBlanks();
+      int c = peek();
+      if(c == END_OF_INPUT) {
+        return null;
+      } else if(c == '\n') {
+        read();
+        line++;
+        lineStart = bufferStart + position;
+      } else if(c == '/') {
+        skipComment();
+      } else {
+        operation = scanBufferedOperation();
+        if(operation == null) {
+          operation = scanOneOperation();
+          skipToNextLine();
+        }
+        return operation;
+      }
+    }
+  }
+
+  /**
+   * Scan an operation and the end of its line when they are all in the buffer, reading the
+   * buffer through locals without checking for its end, as the sentinel stops every loop there
+   * Nothing is consumed if the line runs past the buffer, has a number which could overflow,
+   * a comment or anything malformed, scanOneOperation scans it again and reports any error
+   * @return the operation scanned, or null if it should be scanned by scanOneOperation
+   */
+  private Operation scanBufferedOperation() {
+    byte[] bytes = buffer;
+    int index = skipBlanks(bytes, position);
+    OperationType operationType = findBufferedOperationType(bytes, index);
+    if(operationType == null) {
+      return null;
+    }
+    // the name and '(' after it
+    index = skipBlanks(bytes, index + operationType.getName().length() + 1);
+    int transactionID = 0;
+    int variable = 0;
+    int writesToValue = 0;
+    int site = 0;
+    if(operationType == OperationType.READ || operationType == OperationType.WRITE) {
+      if(bytes[index] != 'T' || (index = scanBufferedDigits(bytes, index + 1)) < 0) {
+        return null;
+      }
+      transactionID = number;
+      index = skipBlanks(bytes, index);
+      if(bytes[index] != ',') {
+        return null;
+      }
+      index = skipBlanks(bytes, index + 1);
+      if(bytes[index] != 'x' || (index = scanBufferedDigits(bytes, index + 1)) < 0) {
+        return null;
+      }
+      variable = number;
+      index = skipBlanks(bytes, index);
+      if(operationType == OperationType.WRITE) {
+        if(bytes[index] != ',') {
+          return null;
+        }
+        index = skipBlanks(bytes, index + 1);
+        boolean isNegative = bytes[index] == '-';
+        if((index = scanBufferedDigits(bytes, isNegative ? index + 1 : index)) < 0) {
+          return null;
+        }
+        writesToValue = isNegative ? -number : number;
+        index = skipBlanks(bytes, index);
+      }
+    } else if(operationType == OperationType.FAIL || operationType == OperationType.RECOVER) {
+      if((index = scanBufferedDigits(bytes, index)) < 0) {
+        return null;
+      }
+      site = number;
+      index = skipBlanks(bytes, index);
+    } else if(operationType != OperationType.DUMP) {
+      if(bytes[index] != 'T' || (index = scanBufferedDigits(bytes, index + 1)) < 0) {
+        return null;
+      }
+      transactionID = number;
+      index = skipBlanks(bytes, index);
+    }
+    if(bytes[index] != ')') {
+      return null;
+    }
+    index = skipBlanks(bytes, index + 1);
+    if(bytes[index] != '\n') {
+      return null;
+    }
+    position = index + 1;
+    line++;
+    lineStart = bufferStart + position;
+    return new Operation(operationType, transactionID, variable, writesToValue, site);
+  }
+
+  /**
+   * Find the operation with the name in the buffer, which should be followed by '('
+   * @param bytes the buffer
+   * @param index where the name starts
+   * @return the type of the operation, or null if it is unknown or something else follows it
+   */
+  private static OperationType findBufferedOperationType(byte[] bytes, int index) {
+    int first = bytes[index];
+    // the sentinel is not a letter, so the byte after a letter is still in the buffer
+    if(first > 0 && SINGLE_LETTER_TYPES[first] != null && bytes[index + 1] == '(') {
+      return SINGLE_LETTER_TYPES[first];
+    }
+    for(int i = 0; i < OPERATION_NAMES.length; i++) {
+      byte[] operationName = OPERATION_NAMES[i];
+      if(matches(operationName, bytes, index) && bytes[index + operationName.length] == '(') {
+        return OPERATION_TYPES[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Scan the digits of a number in the buffer into the number field
+   * It's kept small so the JIT inlines it into scanBufferedOperation
+   * @param bytes the buffer
+   * @param index of the first digit
+   * @return index after the last digit, or -1 if there's no digit or too many of them
+   */
+  private int scanBufferedDigits(byte[] bytes, int index) {
+    int start = index;
+    int value = 0;
+    for(int digit = bytes[index] - '0'; digit >= 0 && digit <= 9; digit = bytes[++index] - '0') {
+      value = 10 * value + digit;
+    }
+    number = value;
+    return index == start || index - start > MAX_SAFE_DIGITS ? -1 : index;
+  }
+
+  /**
+   * Skip spaces, tabs and carriage returns in the buffer
+   * @param bytes the buffer
+   * @param index where to start
+   * @return index of the first byte which is not blank
+   */
+  private static int skipBlanks(byte[] bytes, int index) {
+    // blanks are below every printable character, which is most of what comes next
+    while(bytes[index] <= ' '
+        && (bytes[index] == ' ' || bytes[index] == '\t' || bytes[index] == '\r')) {
+      index++;
+    }
+    return index;
+  }
+
+  /**
+   * Find the operation type with the name in the buffer
+   * @param bytes the buffer
+   * @param start index of the name
+   * @param length of the name
+   * @return the type of the operation, or null if it is unknown
+   */
+  private static OperationType findOperationType(byte[] bytes, int start, int length) {
+    for(int i = 0; i < OPERATION_NAMES.length; i++) {
+      byte[] operationName = OPERATION_NAMES[i];
+      if(operationName.length == length && matches(operationName, bytes, start)) {
+        return OPERATION_TYPES[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Scan an operation like 'W(T1, x2, 30)'
+   * @return the operation scanned
+   */
+  private Operation scanOneOperation() {
+    int nameLine = line;
+    int nameColumn = column();
+    OperationType operationType = scanName();
+    if(operationType == null) {
+      throw new OperationParseException(nameLine, nameColumn,
+          "This operation is not being supported");
+    }
+    skipBlanks();
+    expect('(');
+    // fields are kept in locals and the operation is built directly from them at the end,
+    // transaction names are only built by the operation once they're asked for
+    int transactionID = 0;
+    int variable = 0;
+    int writesToValue = 0;
+    int site = 0;
+    switch (operationType) {
+      case BEGIN:
+      case BEGIN_RO:
+      case END:
+        transactionID = scanTransaction();
+        break;
+      case DUMP:
+        break;
+      case READ:
+        transactionID = scanTransaction();
+        expectComma();
+        variable = scanVariable();
+        break;
+      case WRITE:
+        transactionID = scanTransaction();
+        expectComma();
+        variable = scanVariable();
+        expectComma();
+        skipBlanks();
+        writesToValue = scanNumber(true);
+        break;
+      case FAIL:
+      case RECOVER:
+        skipBlanks();
+        site = scanNumber(false);
+        break;
+      default:
+        throw new OperationParseException(nameLine, nameColumn,
+            "This operation is not being supported");
+    }
+    skipBlanks();
+    expect(')');
+    return new Operation(operationType, transactionID, variable, writesToValue, site);
+  }
+
+  /**
+   * Scan the name of an operation
+   * @return the type of the operation, or null if it is unknown
+   */
+  private OperationType scanName() {
+    int length = 0;
+    for(int c = peek(); isLetter(c); c = peek()) {
+      position++;
+      if(length < MAX_NAME_LENGTH) {
+        name[length] = (byte) c;
+      }
+      length++;
+    }
+    return length <= MAX_NAME_LENGTH ? findOperationType(name, 0, length) : null;
+  }
+
+  /**
+   * Check if the name at the start index equals to an operation name
+   * @param operationName given to compare with
+   * @param bytes holding the name
+   * @param start index of the name
+   * @return true if they are the same
+   */
+  private static boolean matches(byte[] operationName, byte[] bytes, int start) {
+    for(int i = 0; i < operationName.length; i++) {
+      if(operationName[i] != bytes[start + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Scan a transaction like 'T1'
+   * @return index of the transaction
+   */
+  private int scanTransaction() {
+    skipBlanks();
+    expect('T');
+    return scanNumber(false);
+  }
+
+  /**
+   * Scan a variable like 'x2'
+   * @return index of the variable
+   */
+  private int scanVariable() {
+    skipBlanks();
+    expect('x');
+    return scanNumber(false);
+  }
+
+  /**
+   * Scan a decimal integer
+   * @param isSigned if the number could be negative
+   * @return the number scanned
+   */
+  private int scanNumber(boolean isSigned) {
+    // a sign, the digits and the character after them are all in the buffer,
+    // so they are read from it directly without checking for its end
+    if(limit - position > MAX_SAFE_DIGITS + 1) {
+      int index = position;
+      boolean isNegative = isSigned && buffer[index] == '-';
+      if(isNegative) {
+        index++;
+      }
+      int start = index;
+      int number = 0;
+      while(index - start < MAX_SAFE_DIGITS && isDigit(buffer[index])) {
+        number = 10 * number + (buffer[index] - '0');
+        index++;
+      }
+      if(index > start && !isDigit(buffer[index])) {
+        position = index;
+        return isNegative ? -number : number;
+      }
+    }
+    return scanLongNumber(isSigned);
+  }
+
+  /**
+   * Scan a decimal integer character by character, checking it doesn't overflow
+   * @param isSigned if the number could be negative
+   * @return the number scanned
+   */
+  private int scanLongNumber(boolean isSigned) {
+    int startColumn = column();
+    boolean isNegative = isSigned && peek() == '-';
+    if(isNegative) {
+      read();
+    }
+    if(!isDigit(peek())) {
+      throw error("expected a number");
+    }
+    long number = 0;
+    for(int c = peek(); isDigit(c); c = peek()) {
+      position++;
+      number = 10 * number + (c - '0');
+      if(number > (long) Integer.MAX_VALUE + 1) {
+        throw new OperationParseException(line, startColumn, "number is too large");
+      }
+    }
+    number = isNegative ? -number : number;
+    if(number > Integer.MAX_VALUE) {
+      throw new OperationParseException(line, startColumn, "number is too large");
+    }
+    return (int) number;
+  }
+
+  private static boolean isDigit(int c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isLetter(int c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+  }
+
+  private void expectComma() {
+    skipBlanks();
+    expect(',');
+  }
+
+  /**
+   * Consume the expected character
+   * @param expected character which should come next
+   */
+  private void expect(char expected) {
+    if(peek() != expected) {
+      throw error(String.format("expected '%s'", expected));
+    }
+    position++;
+  }
+
+  /**
+   * Skip spaces, tabs and carriage returns, but stop at the end of line
+   */
+  private void skipBlanks() {
+    for(int c = peek(); c == ' ' || c == '\t' || c == '\r'; c = peek()) {
+      position++;
+    }
+  }
+
+  /**
+   * Skip a comment starting with '//' to the end of the line
+   */
+  private void skipComment() {
+    expect('/');
+    expect('/');
+    int c = peek();
+    while(c != '\n' && c != END_OF_INPUT) {
+      read();
+      c = peek();
+    }
+  }
+
+  /**
+   * Only blanks or a comment could follow an operation on the same line
+   */
+  private void skipToNextLine() {
+    skipBlanks();
+    int c = peek();
+    if(c == '/') {
+      skipComment();
+    } else if(c != '\n' && c != END_OF_INPUT) {
+      throw error("unexpected character after operation");
+    }
+  }
+
+  /**
+   * Build an exception pointing at the next character
+   * @param message describing the error
+   * @return exception to throw
+   */
+  private OperationParseException error(String message) {
+    return new OperationParseException(line, column(), message);
+  }
+
+  /**
+   * Get the column of the next character
+   * @return column counted from 1
+   */
+  private int column() {
+    return (int) (bufferStart + position - lineStart) + 1;
+  }
+
+  /**
+   * Get the next byte without consuming it
+   * @return the next byte, or END_OF_INPUT
+   */
+  private int peek() {
+    if(position == limit && !fill()) {
+      return END_OF_INPUT;
+    }
+    return buffer[position] & 0xff;
+  }
+
+  /**
+   * Consume the next byte
+   * @return the byte consumed, or END_OF_INPUT
+   */
+  private int read() {
+    int c = peek();
+    if(c != END_OF_INPUT) {
+      position++;
+    }
+    return c;
+  }
+
+  /**
+   * Read the next chunk of bytes into the buffer
+   * @return false if there's no more input
+   */
+  private boolean fill() {
+    try {
+      bufferStart += limit;
+      int count = input.read(buffer, 0, BUFFER_SIZE);
+      while(count == 0) {
+        count = input.read(buffer, 0, BUFFER_SIZE);
+      }
+      position = 0;
+      limit = Math.max(count, 0);
+      buffer[limit] = SENTINEL;
+      return count > 0;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
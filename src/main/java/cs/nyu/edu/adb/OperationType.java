@@ -0,0 +1,50 @@
+package cs.nyu.edu.adb;
+
+public enum OperationType {
+
+  BEGIN(IOUtils.BEGIN),
+  BEGIN_RO(IOUtils.BEGIN_RO),
+  END(IOUtils.END),
+  DUMP(IOUtils.DUMP),
+  FAIL(IOUtils.FAIL),
+  RECOVER(IOUtils.RECOVER),
+  READ(IOUtils.READ),
+  WRITE(IOUtils.WRITE);
+
+  private final String name;
+
+  OperationType(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Get the name the operation is written with in the input, like 'beginRO'
+   * @return name of the operation
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Check if operations of this type belong to a transaction
+   * @return true for begin, beginRO, end, reads and writes
+   */
+  public boolean hasTransaction() {
+    return this == BEGIN || this == BEGIN_RO || this == END || this == READ || this == WRITE;
+  }
+
+  /**
+   * Find the operation type written with the given name
+   * @param name of the operation in the input
+   * @return the matching operation type
+   * @throws IllegalArgumentException if no operation has the name
+   */
+  public static OperationType fromName(String name) {
+    for(OperationType type : values()) {
+      if(type.name.equals(name)) {
+        return type;
+      }
+    }
+    throw new IllegalArgumentException(String.format("Unknown operation %s", name));
+  }
+}
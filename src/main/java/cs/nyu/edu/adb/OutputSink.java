@@ -0,0 +1,29 @@
+package cs.nyu.edu.adb;
+
+public interface OutputSink {
+
+  /**
+   * Write one output message, one message a line
+   * @param message given to write
+   */
+  void write(String message);
+
+  /**
+   * Write one output message which could be changed once this returns,
+   * sinks keeping messages around must copy it
+   * @param message given to write
+   */
+  default void write(CharSequence message) {
+    write(message.toString());
+  }
+
+  /**
+   * Make sure every message written so far has reached its destination
+   */
+  void flush();
+
+  /**
+   * Flush and release the underlying channel, the sink could not be used after closing
+   */
+  void close();
+}
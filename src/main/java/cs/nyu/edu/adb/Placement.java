@@ -0,0 +1,14 @@
+package cs.nyu.edu.adb;
+
+import java.util.List;
+
+public interface Placement {
+
+  /**
+   * Decide which sites store copies of a variable
+   * @param variable index of the variable
+   * @param topology giving the number of sites and the replication factor
+   * @return indexes of the sites storing this variable, in ascending order
+   */
+  List<Integer> getSites(Integer variable, Topology topology);
+}
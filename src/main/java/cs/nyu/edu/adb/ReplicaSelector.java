@@ -0,0 +1,59 @@
+package cs.nyu.edu.adb;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+public interface ReplicaSelector {
+
+  String LOWEST_INDEX = "lowest-index";
+  String ROUND_ROBIN = "round-robin";
+  String LEAST_LOADED = "least-loaded";
+  String STICKY = "sticky";
+
+  /**
+   * Order the copies of a variable the way a read tries them
+   * The read takes its quorum from the first copies which are up and have no lock conflict,
+   * and reads the newest value among them, the first one if several are equally new
+   * @param variable which is read
+   * @param transaction which reads the variable
+   * @param copies sites storing the variable in ascending order of index, could be reordered
+   * @return the same sites in the order they should be tried
+   */
+  List<Site> order(int variable, Transaction transaction, List<Site> copies);
+
+  /**
+   * Called when a transaction has read a variable from a site
+   * @param transaction which has read
+   * @param site which the value is read from
+   */
+  default void onRead(Transaction transaction, Site site) {
+  }
+
+  /**
+   * Called when a transaction commits or aborts
+   * @param transaction which has finished
+   */
+  default void onFinish(Transaction transaction) {
+  }
+
+  /**
+   * Find the selector with the given name
+   * @param name one of lowest-index, round-robin, least-loaded and sticky
+   * @return supplier of the selector
+   * @throws IllegalArgumentException if there's no selector with the name
+   */
+  static Supplier<ReplicaSelector> forName(String name) {
+    switch (name) {
+      case LOWEST_INDEX:
+        return LowestIndexSelector::new;
+      case ROUND_ROBIN:
+        return RoundRobinSelector::new;
+      case LEAST_LOADED:
+        return LeastLoadedSelector::new;
+      case STICKY:
+        return StickySelector::new;
+      default:
+        throw new IllegalArgumentException(String.format("Unknown replica selector %s", name));
+    }
+  }
+}
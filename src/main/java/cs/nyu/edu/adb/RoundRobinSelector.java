@@ -0,0 +1,24 @@
+package cs.nyu.edu.adb;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Start every read of a variable at the copy after the one the previous read started at
+ * Reads of a variable are spread evenly over its copies, no matter how loaded they are
+ */
+public class RoundRobinSelector implements ReplicaSelector {
+
+  // variable -> position in its copies the next read starts at
+  private Map<Integer, Integer> nextPositions = new HashMap<>();
+
+  @Override
+  public List<Site> order(int variable, Transaction transaction, List<Site> copies) {
+    int position = nextPositions.getOrDefault(variable, 0) % copies.size();
+    nextPositions.put(variable, position + 1);
+    Collections.rotate(copies, -position);
+    return copies;
+  }
+}
@@ -1,5 +1,10 @@
 package cs.nyu.edu.adb;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public class Site {
 
   private LockManager lockManager;
@@ -7,11 +12,46 @@ public class Site {
   private boolean isDown;
   private Integer index;
 
+  // log of values committed at this site, null if nothing is logged
+  private WriteAheadLog writeAheadLog;
+
+  // the only thread touching lock table and data of this site, null if tasks run inline
+  private ExecutorService executor;
+
+  // number of reads which got their value from this site, only counted by the transaction manager
+  private long servedReads;
+
   public Site(Integer index) {
+    this(index, false);
+  }
+
+  /**
+   * Create a site
+   * @param index of this site
+   * @param hasExecutor true if tasks submitted to this site run on its own thread
+   */
+  public Site(Integer index, boolean hasExecutor) {
+    this(index, hasExecutor, new EngineMetrics());
+  }
+
+  /**
+   * Create a site
+   * @param index of this site
+   * @param hasExecutor true if tasks submitted to this site run on its own thread
+   * @param metrics given to count locks granted at this site
+   */
+  public Site(Integer index, boolean hasExecutor, EngineMetrics metrics) {
     isDown = false;
     dataManager = new DataManager();
-    lockManager = new LockManager();
+    lockManager = new LockManager(LockManager.DEFAULT_CAPACITY, metrics);
     this.index = index;
+    if(hasExecutor) {
+      executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "site-" + index);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
   }
 
   public Integer getIndex() {
@@ -30,7 +70,59 @@ public class Site {
     return lockManager;
   }
 
+  /**
+   * Get the number of locks held at this site, it could be read from any thread
+   * @return number of read and write locks
+   */
+  public int getLockCount() {
+    return lockManager.getLockCount();
+  }
+
+  public long getServedReads() {
+    return servedReads;
+  }
+
+  public void addServedRead() {
+    servedReads++;
+  }
+
   public DataManager getDataManager() {
     return dataManager;
   }
+
+  public WriteAheadLog getWriteAheadLog() {
+    return writeAheadLog;
+  }
+
+  public void setWriteAheadLog(WriteAheadLog writeAheadLog) {
+    this.writeAheadLog = writeAheadLog;
+  }
+
+  public boolean hasExecutor() {
+    return executor != null;
+  }
+
+  /**
+   * Submit a task working on the lock table or data of this site to its executor
+   * Tasks of one site run one at a time in the order they are submitted. Sites without
+   * an executor are touched directly by the caller's thread instead
+   * @param task given to run
+   * @return future of the task result
+   * @throws IllegalStateException if the site has no executor
+   */
+  public <T> Future<T> submit(Callable<T> task) {
+    if(executor == null) {
+      throw new IllegalStateException(String.format("Site %s runs tasks inline", index));
+    }
+    return executor.submit(task);
+  }
+
+  /**
+   * Stop the executor of this site once submitted tasks are done
+   */
+  public void shutdown() {
+    if(executor != null) {
+      executor.shutdown();
+    }
+  }
 }
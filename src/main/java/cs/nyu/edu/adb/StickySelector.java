@@ -0,0 +1,41 @@
+package cs.nyu.edu.adb;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keep every transaction reading from the same site as long as it stores the variable
+ * Transactions start at different sites, picked by their index, so the read locks of
+ * a transaction stay in few lock tables while the transactions are spread over the sites
+ */
+public class StickySelector implements ReplicaSelector {
+
+  // transaction index -> index of the site it read from first
+  private Map<Integer, Integer> preferredSites = new HashMap<>();
+
+  @Override
+  public List<Site> order(int variable, Transaction transaction, List<Site> copies) {
+    Integer preferredSite = preferredSites.get(transaction.getId());
+    int position = Math.floorMod(transaction.getId(), copies.size());
+    for(int i = 0; preferredSite != null && i < copies.size(); i++) {
+      if(copies.get(i).getIndex().equals(preferredSite)) {
+        position = i;
+        break;
+      }
+    }
+    Collections.rotate(copies, -position);
+    return copies;
+  }
+
+  @Override
+  public void onRead(Transaction transaction, Site site) {
+    preferredSites.putIfAbsent(transaction.getId(), site.getIndex());
+  }
+
+  @Override
+  public void onFinish(Transaction transaction) {
+    preferredSites.remove(transaction.getId());
+  }
+}
@@ -0,0 +1,78 @@
+package cs.nyu.edu.adb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transactions blocked on locks for too long are aborted, whether they are in a deadlock or not
+ * Time is counted in operations, like every other time stamp of the engine. TransactionClient
+ * advances the clock while reads or writes are blocked, so waits end even if nothing else arrives
+ */
+public class TimeoutPolicy implements DeadlockPolicy {
+
+  public static final int DEFAULT_TIMEOUT = 100;
+
+  private int timeout;
+
+  // blocked transaction -> time it has been blocked since, in the order they are blocked
+  private Map<Transaction, Integer> blockedSince;
+
+  public TimeoutPolicy() {
+    this(DEFAULT_TIMEOUT);
+  }
+
+  /**
+   * Create a timeout policy
+   * @param timeout number of operations a transaction could wait for locks at most
+   */
+  public TimeoutPolicy(int timeout) {
+    if(timeout < 1) {
+      throw new IllegalArgumentException("Lock timeout should be at least 1");
+    }
+    this.timeout = timeout;
+    blockedSince = new LinkedHashMap<>();
+  }
+
+  @Override
+  public List<Transaction> onBlock(
+      Transaction transaction,
+      List<Transaction> holders,
+      int currentTime) {
+    blockedSince.putIfAbsent(transaction, currentTime);
+    return Collections.emptyList();
+  }
+
+  @Override
+  public void onGrant(Transaction transaction) {
+    blockedSince.remove(transaction);
+  }
+
+  @Override
+  public List<Transaction> onTick(int currentTime) {
+    List<Transaction> victims = new ArrayList<>();
+    Iterator<Map.Entry<Transaction, Integer>> iterator = blockedSince.entrySet().iterator();
+    while(iterator.hasNext()) {
+      Map.Entry<Transaction, Integer> entry = iterator.next();
+      if(currentTime - entry.getValue() > timeout) {
+        victims.add(entry.getKey());
+        iterator.remove();
+      }
+    }
+    return victims;
+  }
+
+  @Override
+  public void onFinish(Transaction transaction) {
+    blockedSince.remove(transaction);
+  }
+
+  @Override
+  public String getAbortMessage(Transaction victim) {
+    return String.format("%s has waited for locks for more than %s operations",
+        victim.getName(), timeout);
+  }
+}
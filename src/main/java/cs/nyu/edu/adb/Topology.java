@@ -0,0 +1,187 @@
+package cs.nyu.edu.adb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class Topology {
+
+  public static final int DEFAULT_SITE_COUNT = 10;
+  public static final int DEFAULT_VARIABLE_COUNT = 20;
+
+  private int siteCount;
+  private int variableCount;
+  private int replicationFactor;
+  private List<Integer> siteIndexes;
+
+  // variable index -> indexes of sites storing this variable
+  private List<List<Integer>> variableSites;
+
+  // variable index -> number of copies we need to read or write
+  private int[] readQuorums;
+  private int[] writeQuorums;
+
+  public static class Builder {
+
+    private int siteCount = DEFAULT_SITE_COUNT;
+    private int variableCount = DEFAULT_VARIABLE_COUNT;
+    private Integer replicationFactor;
+    private Integer readQuorum;
+    private Integer writeQuorum;
+    private Placement placement = new DefaultPlacement();
+
+    public Builder siteCount(int siteCount) {
+      this.siteCount = siteCount;
+      return this;
+    }
+
+    public Builder variableCount(int variableCount) {
+      this.variableCount = variableCount;
+      return this;
+    }
+
+    public Builder replicationFactor(int replicationFactor) {
+      this.replicationFactor = replicationFactor;
+      return this;
+    }
+
+    public Builder readQuorum(int readQuorum) {
+      this.readQuorum = readQuorum;
+      return this;
+    }
+
+    public Builder writeQuorum(int writeQuorum) {
+      this.writeQuorum = writeQuorum;
+      return this;
+    }
+
+    public Builder placement(Placement placement) {
+      this.placement = placement;
+      return this;
+    }
+
+    public Topology build() {
+      return new Topology(this);
+    }
+  }
+
+  /**
+   * Sites are indexed from 1 to siteCount, variables from 1 to variableCount
+   * A placement putting a copy anywhere else is rejected
+   * A replicated variable is read from R copies and written to W copies,
+   * where R + W and 2W should both be larger than the number of copies N,
+   * so that every read or write meets the latest write at one copy at least.
+   * By default we write all copies and read one copy
+   * @param builder given to get configurations
+   */
+  private Topology(Builder builder) {
+    siteCount = builder.siteCount;
+    variableCount = builder.variableCount;
+    replicationFactor = builder.replicationFactor == null
+        ? siteCount : builder.replicationFactor;
+    if(siteCount < 1 || variableCount < 0
+        || replicationFactor < 1 || replicationFactor > siteCount) {
+      throw new IllegalArgumentException(String.format(
+          "Invalid topology: %s sites, %s variables, replication factor %s",
+          siteCount, variableCount, replicationFactor));
+    }
+
+    siteIndexes = new ArrayList<>();
+    for(int i = 1; i <= siteCount; i++) {
+      siteIndexes.add(i);
+    }
+    siteIndexes = Collections.unmodifiableList(siteIndexes);
+
+    variableSites = new ArrayList<>();
+    variableSites.add(Collections.emptyList());
+    readQuorums = new int[variableCount + 1];
+    writeQuorums = new int[variableCount + 1];
+    for(int i = 1; i <= variableCount; i++) {
+      List<Integer> sites = builder.placement.getSites(i, this);
+      for(Integer site : sites) {
+        if(site < 1 || site > siteCount) {
+          throw new IllegalArgumentException(String.format(
+              "Variable x%s is placed at unknown site %s", i, site));
+        }
+      }
+      variableSites.add(Collections.unmodifiableList(new ArrayList<>(sites)));
+
+      int copies = sites.size();
+      writeQuorums[i] = builder.writeQuorum == null
+          ? copies : Math.min(builder.writeQuorum, copies);
+      readQuorums[i] = builder.readQuorum == null
+          ? copies - writeQuorums[i] + 1 : Math.min(builder.readQuorum, copies);
+      if(readQuorums[i] < 1 || writeQuorums[i] < 1
+          || readQuorums[i] + writeQuorums[i] <= copies || 2 * writeQuorums[i] <= copies) {
+        throw new IllegalArgumentException(String.format(
+            "Invalid quorums for x%s with %s copies: read quorum %s, write quorum %s",
+            i, copies, readQuorums[i], writeQuorums[i]));
+      }
+    }
+  }
+
+  public int getSiteCount() {
+    return siteCount;
+  }
+
+  public int getVariableCount() {
+    return variableCount;
+  }
+
+  public int getReplicationFactor() {
+    return replicationFactor;
+  }
+
+  /**
+   * Get indexes of all sites, which range from 1 to siteCount
+   * @return indexes of all sites
+   */
+  public List<Integer> getSiteIndexes() {
+    return siteIndexes;
+  }
+
+  /**
+   * Get indexes of sites which store a variable
+   * @param variable given to find sites
+   * @return indexes of sites in ascending order
+   */
+  public List<Integer> getSites(Integer variable) {
+    return variableSites.get(variable);
+  }
+
+  /**
+   * Check if a variable has copies at more than one site
+   * @param variable given to check
+   * @return true if the variable is replicated
+   */
+  public boolean isReplicated(Integer variable) {
+    return variableSites.get(variable).size() > 1;
+  }
+
+  /**
+   * Get the number of copies a transaction should read
+   * @param variable given to read
+   * @return read quorum of the variable
+   */
+  public int getReadQuorum(Integer variable) {
+    return readQuorums[variable];
+  }
+
+  /**
+   * Get the number of copies a transaction should write
+   * @param variable given to write
+   * @return write quorum of the variable
+   */
+  public int getWriteQuorum(Integer variable) {
+    return writeQuorums[variable];
+  }
+
+  /**
+   * The initial value for variables is var_index * 10
+   * @param variable given to get initial value
+   * @return initial value of the variable
+   */
+  public Integer getInitialValue(Integer variable) {
+    return 10 * variable;
+  }
+}
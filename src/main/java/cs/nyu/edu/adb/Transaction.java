@@ -6,14 +6,22 @@ import java.util.List;
 public class Transaction {
 
   private Integer timeStamp;
+  private int id;
   private String name;
   private Operation currentOperation;
   private TransactionStatus transactionStatus;
   private boolean isReadOnly;
 
+  // System.nanoTime() when the current operation got blocked, 0 if it's not blocked
+  private long blockedSince;
+
+  // reads and buffered writes, created when the transaction first needs it
+  private Workspace workspace;
+
   public Transaction(String name, boolean isReadOnly, Integer timeStamp) {
     transactionStatus = TransactionStatus.ACTIVE;
     this.name = name;
+    this.id = Integer.parseInt(name.substring(1));
     this.isReadOnly = isReadOnly;
     this.timeStamp = timeStamp;
   }
@@ -22,6 +30,10 @@ public class Transaction {
     return timeStamp;
   }
 
+  public int getId() {
+    return id;
+  }
+
   public boolean isReadOnly() {
     return isReadOnly;
   }
@@ -45,4 +57,19 @@ public class Transaction {
   public void setCurrentOperation(Operation currentOperation) {
     this.currentOperation = currentOperation;
   }
+
+  public Workspace getWorkspace() {
+    if(workspace == null) {
+      workspace = new Workspace();
+    }
+    return workspace;
+  }
+
+  public long getBlockedSince() {
+    return blockedSince;
+  }
+
+  public void setBlockedSince(long blockedSince) {
+    this.blockedSince = blockedSince;
+  }
 }
@@ -0,0 +1,17 @@
+package cs.nyu.edu.adb;
+
+public class TransactionAbortedException extends IllegalStateException {
+
+  private static final long serialVersionUID = 1L;
+
+  private String transaction;
+
+  public TransactionAbortedException(String transaction) {
+    super(String.format("%s has been aborted", transaction));
+    this.transaction = transaction;
+  }
+
+  public String getTransaction() {
+    return transaction;
+  }
+}
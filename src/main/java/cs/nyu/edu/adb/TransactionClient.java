@@ -0,0 +1,412 @@
+package cs.nyu.edu.adb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client driving its own transaction manager from any number of threads
+ * A transaction could have one read or write outstanding at a time, like a transaction of
+ * an input file. Another read or write of the same transaction fails with
+ * IllegalStateException until the blocked one completes
+ */
+public class TransactionClient implements TransactionListener, AutoCloseable {
+
+  // how often the clock of the engine advances while reads or writes are blocked
+  private static final long TICK_INTERVAL_MILLIS = 10;
+
+  private TransactionManager transactionManager;
+  private EngineConfig config;
+
+  // the only thread calling the transaction manager, operations run in the order they are sent
+  private ThreadPoolExecutor sequencer;
+
+  // advances the clock while no operation arrives, so blocked transactions could time out
+  private ScheduledExecutorService clock;
+
+  // fields below are only touched by the sequencer
+
+  // transactionID -> reads and writes which have not completed yet
+  private Map<Integer, List<PendingOperation>> pendingOperations;
+
+  // transactionID -> commit which has been executed, completed once the engine reports it
+  // as durable
+  private Map<Integer, CompletableFuture<Boolean>> unsyncedCommits;
+
+  /**
+   * Create a client for the default topology
+   */
+  public TransactionClient() {
+    this(new Topology.Builder().build(), new EngineConfig.Builder().build());
+  }
+
+  /**
+   * Create a client which drops the output messages of the engine
+   * @param topology giving sites, variables and where variables are placed
+   * @param config giving how the engine runs
+   */
+  public TransactionClient(Topology topology, EngineConfig config) {
+    this(topology, config, new DiscardingOutputSink());
+  }
+
+  /**
+   * Create a client which owns its own transaction manager
+   * Calls could come from any number of threads at the same time. They return futures which
+   * complete once the operation is done, a blocked operation keeps its future pending until
+   * it gets its locks. Futures complete on the sequencer thread, so dependent work should use
+   * the async methods of CompletableFuture
+   * A commit completes once it is durable. Logs are forced when the sequencer has nothing
+   * else to do or enough commits are waiting, so commits arriving together share one fsync
+   * @param topology giving sites, variables and where variables are placed
+   * @param config giving how the engine runs
+   * @param outputSink given to write output messages to, flushed on close and closed by the caller
+   */
+  public TransactionClient(Topology topology, EngineConfig config, OutputSink outputSink) {
+    this.config = config;
+    transactionManager = new TransactionManager(topology, config, outputSink);
+    transactionManager.setTransactionListener(this);
+    pendingOperations = new HashMap<>();
+    unsyncedCommits = new HashMap<>();
+    sequencer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "transaction-manager");
+          thread.setDaemon(true);
+          return thread;
+        });
+    clock = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "transaction-clock");
+      thread.setDaemon(true);
+      return thread;
+    });
+    clock.scheduleWithFixedDelay(() -> execute(() -> {
+      if(!pendingOperations.isEmpty()) {
+        transactionManager.tick();
+      }
+    }), TICK_INTERVAL_MILLIS, TICK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Begin a transaction
+   * @param transaction name of the transaction, like T1
+   * @return future completed once the transaction has begun
+   */
+  public CompletableFuture<Void> begin(String transaction) {
+    return submit(new Operation.Builder(OperationType.BEGIN).transaction(transaction).build());
+  }
+
+  /**
+   * Begin a read-only transaction
+   * @param transaction name of the transaction, like T1
+   * @return future completed once the transaction has begun
+   */
+  public CompletableFuture<Void> beginReadOnly(String transaction) {
+    return submit(new Operation.Builder(OperationType.BEGIN_RO).transaction(transaction).build());
+  }
+
+  /**
+   * Read a variable
+   * @param transaction name of the transaction reading
+   * @param variable given to read
+   * @return future of the value, failed with TransactionAbortedException if the transaction
+   * is aborted before the read completes, or with IllegalStateException if another read or
+   * write of the transaction has not completed
+   */
+  public CompletableFuture<Integer> read(String transaction, int variable) {
+    return submitAndWait(new Operation.Builder(OperationType.READ)
+        .transaction(transaction)
+        .variable(variable)
+        .build());
+  }
+
+  /**
+   * Write a variable
+   * @param transaction name of the transaction writing
+   * @param variable given to write
+   * @param value given to write
+   * @return future completed once copies are locked and updated, failed with
+   * TransactionAbortedException if the transaction is aborted before the write completes,
+   * or with IllegalStateException if another read or write of the transaction has not completed
+   */
+  public CompletableFuture<Void> write(String transaction, int variable, int value) {
+    return submitAndWait(new Operation.Builder(OperationType.WRITE)
+        .transaction(transaction)
+        .variable(variable)
+        .writesToValue(value)
+        .build())
+        .thenApply(written -> null);
+  }
+
+  /**
+   * End a transaction, it commits unless it has to be aborted
+   * It's aborted if any of its reads or writes has not completed yet, they fail with
+   * TransactionAbortedException
+   * @param transaction name of the transaction
+   * @return future of true if the transaction commits, false if it aborts
+   */
+  public CompletableFuture<Boolean> commit(String transaction) {
+    Operation operation = new Operation.Builder(OperationType.END).transaction(transaction).build();
+    CompletableFuture<Boolean> future = new CompletableFuture<>();
+    execute(() -> {
+      Integer transactionID = operation.getTransactionID();
+      // the engine reports nothing when a deadlock victim ends, it has been aborted before
+      boolean isAborted = transactionManager.isAbortedByDeadLock(transactionID);
+      // the engine might report the commit or the abort while the end operation runs
+      unsyncedCommits.put(transactionID, future);
+      try {
+        if(pendingOperations.containsKey(transactionID)) {
+          // the commit could not include them, and nothing would complete them after it
+          transactionManager.abortTransaction(transactionID);
+        } else {
+          transactionManager.executeOperation(operation);
+        }
+        if(isAborted) {
+          unsyncedCommits.remove(transactionID);
+          future.complete(false);
+        }
+      } catch (RuntimeException e) {
+        unsyncedCommits.remove(transactionID);
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Fail a site
+   * @param site index given to fail
+   * @return future completed once the site is down
+   */
+  public CompletableFuture<Void> fail(int site) {
+    return submit(new Operation.Builder(OperationType.FAIL).site(site).build());
+  }
+
+  /**
+   * Recover a site
+   * @param site index given to recover
+   * @return future completed once the site is up
+   */
+  public CompletableFuture<Void> recover(int site) {
+    return submit(new Operation.Builder(OperationType.RECOVER).site(site).build());
+  }
+
+  /**
+   * Print committed values of all sites
+   * @return future completed once the values are written out
+   */
+  public CompletableFuture<Void> dump() {
+    return submit(new Operation.Builder(OperationType.DUMP).build());
+  }
+
+  /**
+   * Get the metrics of the engine, a snapshot could be taken while operations run
+   * @return metrics of the transaction manager
+   */
+  public EngineMetrics getMetrics() {
+    return transactionManager.getMetrics();
+  }
+
+  /**
+   * Stop accepting operations, wait for the sent ones and shut the engine down
+   * Reads and writes still blocked by then fail with TransactionAbortedException,
+   * as nothing would grant their locks anymore
+   */
+  @Override
+  public void close() {
+    clock.shutdownNow();
+    if(!sequencer.isShutdown()) {
+      execute(this::failAllPendingOperations);
+    }
+    sequencer.shutdown();
+    try {
+      sequencer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    transactionManager.shutdown();
+  }
+
+  @Override
+  public void onRead(Operation operation, int value) {
+    complete(operation, value);
+  }
+
+  @Override
+  public void onWrite(Operation operation) {
+    complete(operation, null);
+  }
+
+  @Override
+  public void onCommit(int transactionID) {
+    CompletableFuture<Boolean> future = unsyncedCommits.remove(transactionID);
+    if(future != null) {
+      future.complete(true);
+    }
+  }
+
+  @Override
+  public void onAbort(int transactionID) {
+    failPendingOperations(transactionID,
+        new TransactionAbortedException(String.format("T%s", transactionID)));
+    // set if the transaction aborts at its end
+    CompletableFuture<Boolean> future = unsyncedCommits.remove(transactionID);
+    if(future != null) {
+      future.complete(false);
+    }
+  }
+
+  /**
+   * Run a task on the sequencer
+   * Waiting commits are made durable afterwards if nothing else is queued
+   * @param task given to run
+   */
+  private void execute(Runnable task) {
+    sequencer.execute(() -> {
+      task.run();
+      if(!unsyncedCommits.isEmpty() && (sequencer.getQueue().isEmpty()
+          || unsyncedCommits.size() >= config.getGroupCommitSize())) {
+        syncCommits();
+      }
+    });
+  }
+
+  /**
+   * Force the logs, the engine reports the commits waiting for them which completes them
+   * They fail if the logs could not be forced
+   */
+  private void syncCommits() {
+    try {
+      transactionManager.syncLogs();
+    } catch (RuntimeException e) {
+      unsyncedCommits.values().forEach(future -> future.completeExceptionally(e));
+      unsyncedCommits.clear();
+    }
+  }
+
+  /**
+   * Run an operation which completes when it has been executed
+   * @param operation given to run
+   * @return future completed after running
+   */
+  private CompletableFuture<Void> submit(Operation operation) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    execute(() -> {
+      try {
+        transactionManager.executeOperation(operation);
+        future.complete(null);
+      } catch (RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Run a read or write, which completes when the transaction manager reports it done
+   * It might be blocked and complete much later, when another transaction releases its locks
+   * @param operation given to run
+   * @return future of the value read, null for a write
+   */
+  private CompletableFuture<Integer> submitAndWait(Operation operation) {
+    CompletableFuture<Integer> future = new CompletableFuture<>();
+    execute(() -> {
+      Integer transactionID = operation.getTransactionID();
+      if(transactionManager.isAbortedByDeadLock(transactionID)) {
+        future.completeExceptionally(new TransactionAbortedException(operation.getTransaction()));
+        return;
+      }
+      // the engine keeps one operation per transaction, a second one would replace the first
+      if(pendingOperations.containsKey(transactionID)) {
+        future.completeExceptionally(new IllegalStateException(String.format(
+            "%s has a read or write which has not completed", operation.getTransaction())));
+        return;
+      }
+      pendingOperations.computeIfAbsent(transactionID, key -> new ArrayList<>())
+          .add(new PendingOperation(operation, future));
+      try {
+        transactionManager.executeOperation(operation);
+      } catch (RuntimeException e) {
+        removePendingOperation(operation);
+        future.completeExceptionally(e);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Complete the future of a pending read or write
+   * @param operation which is done
+   * @param value read, null for a write
+   */
+  private void complete(Operation operation, Integer value) {
+    PendingOperation pendingOperation = removePendingOperation(operation);
+    if(pendingOperation != null) {
+      pendingOperation.future.complete(value);
+    }
+  }
+
+  /**
+   * Stop tracking a read or write
+   * @param operation given to find
+   * @return the pending operation, null if it's not pending
+   */
+  private PendingOperation removePendingOperation(Operation operation) {
+    List<PendingOperation> operations = pendingOperations.get(operation.getTransactionID());
+    if(operations == null) {
+      return null;
+    }
+    PendingOperation removed = null;
+    Iterator<PendingOperation> iterator = operations.iterator();
+    while(iterator.hasNext()) {
+      PendingOperation pendingOperation = iterator.next();
+      if(pendingOperation.operation == operation) {
+        iterator.remove();
+        removed = pendingOperation;
+        break;
+      }
+    }
+    if(operations.isEmpty()) {
+      pendingOperations.remove(operation.getTransactionID());
+    }
+    return removed;
+  }
+
+  /**
+   * Fail all pending reads and writes of a transaction
+   * @param transactionID given to find operations
+   * @param cause given to fail the futures with
+   */
+  private void failPendingOperations(Integer transactionID, RuntimeException cause) {
+    List<PendingOperation> operations = pendingOperations.remove(transactionID);
+    if(operations != null) {
+      operations.forEach(pendingOperation -> pendingOperation.future.completeExceptionally(cause));
+    }
+  }
+
+  /**
+   * Fail every pending read and write, each with the name of its own transaction
+   */
+  private void failAllPendingOperations() {
+    pendingOperations.values().forEach(operations -> operations.forEach(pendingOperation ->
+        pendingOperation.future.completeExceptionally(
+            new TransactionAbortedException(pendingOperation.operation.getTransaction()))));
+    pendingOperations.clear();
+  }
+
+  private static class PendingOperation {
+    private final Operation operation;
+    private final CompletableFuture<Integer> future;
+
+    private PendingOperation(Operation operation, CompletableFuture<Integer> future) {
+      this.operation = operation;
+      this.future = future;
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package cs.nyu.edu.adb;
+
+public interface TransactionListener {
+
+  /**
+   * Called when a read gets its value, right away or after it has been blocked
+   * @param operation the read operation
+   * @param value which has been read
+   */
+  void onRead(Operation operation, int value);
+
+  /**
+   * Called when a write has locked and updated its copies, right away or after it has been blocked
+   * @param operation the write operation
+   */
+  void onWrite(Operation operation);
+
+  /**
+   * Called when a transaction commits, only once its commit is durable if the engine keeps logs
+   * That could be during a later operation, or when the logs are synced
+   * @param transactionID of the transaction
+   */
+  void onCommit(int transactionID);
+
+  /**
+   * Called when a transaction aborts, at its end or as a deadlock victim
+   * @param transactionID of the transaction
+   */
+  void onAbort(int transactionID);
+}
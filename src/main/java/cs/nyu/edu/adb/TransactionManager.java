@@ -1,65 +1,402 @@
 package cs.nyu.edu.adb;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
 
 public class TransactionManager {
 
-  private Integer currentTime;
-  private List<Transaction> allTransactions;
+  private int currentTime;
+  private Topology topology;
+  private EngineConfig config;
+
+  // output of the run, every transaction manager has its own
+  private IOUtils ioUtils;
+
+  // counters and latencies of this transaction manager and the lock tables of its sites
+  private EngineMetrics metrics;
+  private TransactionRegistry transactions;
   private List<Site> sites;
-  private List<Operation> allOperations;
-  private List<Integer> visitedTransactions;
 
-  // variable -> waiting operations
-  private Map<Integer, List<Operation>> waitingOperations;
+  // sites at the indexes the topology gives, without the placeholder site 0
+  private List<Site> indexedSites;
+
+  // variable -> sites storing its copies in ascending order of index
+  private List<List<Site>> copiesByVariable;
+
+  // true if every site runs its tasks on its own thread, otherwise tasks run inline
+  private boolean isConcurrentSites;
+
+  // copies of the variable read last, in the order the replica selector gives
+  private List<Site> orderedCopies;
+
+  // sites of the quorum found last, it's reused since a quorum is used up before looking
+  // for the next one
+  private List<Site> quorumSites;
 
-  // waits for graph, transaction -> waiting transactions
-  private Map<Integer, List<Integer>> waitsForGraph;
+  // variable -> FIFO queue of waiting operations
+  private LockWaitQueue waitingOperations;
+
+  // decides which transactions are aborted when transactions block each other
+  private DeadlockPolicy deadlockPolicy;
+
+  // decides which copies of a variable a read tries first
+  private ReplicaSelector replicaSelector;
+
+  // true if transactions take no locks and are validated when they end
+  private boolean isOptimistic;
 
   // transactionID -> waiting sites
   private Map<Integer, List<Integer>> waitingSites;
 
+  // begin time stamps of read-only transactions which have not ended yet
+  private TreeSet<Integer> activeReadOnlyTimeStamps;
+
+  // told about reads, writes and ends of transactions, null if nobody listens
+  private TransactionListener listener;
+
+  // number of commits whose log entries have not been forced to disk
+  private int unsyncedCommits;
+
+  // true if versions copied to recovered sites have been logged but not forced to disk
+  private boolean hasUnsyncedRefreshes;
+
+  // transactions which have committed but not been printed or told to the listener yet,
+  // since their log entries have not been forced to disk
+  private List<Integer> unreportedCommits;
+
+  // number of commits since the last checkpoint
+  private int commitsSinceCheckpoint;
+
+  // writes checkpoint files in the background, null if nothing is logged
+  private ExecutorService checkpointWriter;
+
+  // first exception thrown while writing a checkpoint, set by the checkpoint writer
+  private volatile UncheckedIOException checkpointFailure;
+
+  /**
+   * Initialize the default topology: ten sites which indexes are range from 1 - 10,
+   * and twenty variables
+   */
+  public TransactionManager() {
+    this(new Topology.Builder().build());
+  }
+
+  /**
+   * Here we initialize operations and sites.
+   * We also initialize LockManager and DataManager for a new site
+   * Each variable is inserted to the sites the topology places it at
+   * @param topology giving sites, variables and where variables are placed
+   */
+  public TransactionManager(Topology topology) {
+    this(topology, new EngineConfig.Builder().build());
+  }
+
   /**
    * Here we initialize operations and sites.
-   * There are ten sites which indexes are range from 1 - 10
    * We also initialize LockManager and DataManager for a new site
-   * Node that variable with even index populate in all sites, and
-   * variable with odd index exists in site[(1 + index) % 10]
-   * The initial value for variables is var_index * 10;
-   * @param allOperations parsed operations by IOUtils from input file
+   * Each variable is inserted to the sites the topology places it at
+   * Every site gets its own executor if the engine runs sites concurrently. Sites are then
+   * only touched by their executors, and we wait for the results in the order of site indexes,
+   * so the output is the same as running them inline
+   * If the engine keeps write-ahead logs, values committed before are restored from them
+   * @param topology giving sites, variables and where variables are placed
+   * @param config giving how the engine runs
+   */
+  public TransactionManager(Topology topology, EngineConfig config) {
+    this(topology, config, IOUtils.createConsoleSink());
+  }
+
+  /**
+   * Create a transaction manager writing its output messages to the given sink
+   * Nothing is shared between transaction managers, so each run could have its own
+   * and runs could go on at the same time
+   * @param topology giving sites, variables and where variables are placed
+   * @param config giving how the engine runs
+   * @param outputSink given to write output messages to, closed by the caller
    */
-  public TransactionManager(List<Operation> allOperations) {
+  public TransactionManager(Topology topology, EngineConfig config, OutputSink outputSink) {
+    this.topology = topology;
+    this.config = config;
+    ioUtils = new IOUtils(outputSink);
+    metrics = new EngineMetrics();
     currentTime = 0;
-    visitedTransactions = new ArrayList<>();
-    allTransactions = new ArrayList<>();
-    waitingOperations = new HashMap<>();
-    waitsForGraph = new HashMap<>();
+    transactions = new TransactionRegistry();
+    waitingOperations = new LockWaitQueue(metrics);
+    deadlockPolicy = config.createDeadlockPolicy();
+    replicaSelector = config.createReplicaSelector();
+    isOptimistic = config.getConcurrencyControl() == ConcurrencyControl.OPTIMISTIC;
     waitingSites = new HashMap<>();
-    this.allOperations = allOperations;
+    activeReadOnlyTimeStamps = new TreeSet<>();
+    unreportedCommits = new ArrayList<>();
+    isConcurrentSites = config.isConcurrentSites();
     sites = new ArrayList<>();
-    for (int i = 0; i < 11; i++) {
-      sites.add(new Site(i));
+    // sites are indexed from 1, site 0 stores nothing and only keeps indexes aligned
+    for (int i = 0; i <= topology.getSiteCount(); i++) {
+      sites.add(new Site(i, isConcurrentSites, metrics));
     }
-    for(int i = 1; i <= 20; ++i) {
-      if(i % 2 == 1) {
-        sites.get((1 + i) % 10).getDataManager().insertValue(i, 10 * i);
-      } else {
-        for(int j = 1; j <= 10; ++j) {
-          sites.get(j).getDataManager().insertValue(i, 10 * i);
+    indexedSites = new ArrayList<>(topology.getSiteCount());
+    topology.getSiteIndexes().forEach(index -> indexedSites.add(sites.get(index)));
+    copiesByVariable = new ArrayList<>();
+    copiesByVariable.add(Collections.emptyList());
+    for(int i = 1; i <= topology.getVariableCount(); ++i) {
+      List<Site> copies = new ArrayList<>();
+      for(Integer site : topology.getSites(i)) {
+        sites.get(site).getDataManager().insertValue(i, topology.getInitialValue(i));
+        copies.add(sites.get(site));
+      }
+      copiesByVariable.add(Collections.unmodifiableList(copies));
+    }
+    orderedCopies = new ArrayList<>(sites.size());
+    quorumSites = new ArrayList<>(sites.size());
+    if(config.getLogDirectory() != null) {
+      openLogs(config.getLogDirectory());
+    }
+    if(config.getJmxName() != null) {
+      metrics.registerMBean(config.getJmxName());
+    }
+  }
+
+  /**
+   * Restore every site from its checkpoint and the log written after it, and keep appending
+   * to the log. The clock continues from the latest commit found,
+   * so new versions are newer than restored ones
+   * A logged value is only restored if it's newer than the version we have. Versions copied
+   * to a recovered site are logged after it recovers, but could be committed before
+   * the checkpoint of the site was taken
+   * Only commits which were durable at every site are restored, a crash in the middle of
+   * a sync could leave the others at some of the copies only
+   * @param directory where logs and checkpoints are kept
+   */
+  private void openLogs(Path directory) {
+    try {
+      Files.createDirectories(directory);
+      int durableTimeStamp = WriteAheadLog.readDurableTimeStamp(directory);
+      currentTime = Math.max(currentTime, durableTimeStamp);
+      for(Site site : indexedSites) {
+        Checkpoint checkpoint = Checkpoint.read(directory, site.getIndex());
+        if(checkpoint != null) {
+          site.getDataManager().restoreCheckpoint(checkpoint);
+          currentTime = Math.max(currentTime, checkpoint.getTimeStamp());
         }
+        WriteAheadLog.replay(directory, site.getIndex(), durableTimeStamp,
+            (commitTimeStamp, variable, value) -> {
+              DataManager dataManager = site.getDataManager();
+              if(commitTimeStamp > dataManager.getLastCommitTimeStamp(variable)) {
+                dataManager.restoreCommittedValue(variable, value, commitTimeStamp);
+              }
+              currentTime = Math.max(currentTime, commitTimeStamp);
+            });
+        site.setWriteAheadLog(new WriteAheadLog(directory, site.getIndex()));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    checkpointWriter = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "checkpoint-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Take a fuzzy checkpoint of every site
+   * Transactions are not stopped for it. Each site only switches its log to a new segment
+   * and copies its committed values, the checkpoint files are written and the log segments
+   * they cover are deleted on a background thread
+   * @throws UncheckedIOException if an earlier checkpoint could not be written
+   */
+  public void checkpoint() {
+    throwCheckpointFailure();
+    Path directory = config.getLogDirectory();
+    int timeStamp = currentTime;
+    List<Runnable> writes = onSites(indexedSites, site -> {
+      List<Path> coveredSegments;
+      try {
+        coveredSegments = site.getWriteAheadLog().rotate();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      Checkpoint checkpoint = site.getDataManager().createCheckpoint(timeStamp);
+      return () -> writeCheckpoint(directory, site.getIndex(), checkpoint, coveredSegments);
+    });
+    // rotating forces the logs, so every commit so far is durable at all sites
+    writeDurableTimeStamp(timeStamp);
+    writes.forEach(checkpointWriter::execute);
+    // rotating forces the logs
+    unsyncedCommits = 0;
+    hasUnsyncedRefreshes = false;
+    commitsSinceCheckpoint = 0;
+    reportCommits();
+  }
+
+  /**
+   * Write the checkpoint of a site, then delete the log segments it covers
+   * Segments are kept if the checkpoint could not be written, and the exception is kept
+   * for the next checkpoint, sync or shutdown
+   * @param directory where logs and checkpoints are kept
+   * @param site index of the site
+   * @param checkpoint given to write
+   * @param coveredSegments log segments written before the checkpoint
+   */
+  private void writeCheckpoint(
+      Path directory,
+      int site,
+      Checkpoint checkpoint,
+      List<Path> coveredSegments) {
+    try {
+      checkpoint.write(directory, site);
+      for(Path segment : coveredSegments) {
+        Files.deleteIfExists(segment);
+      }
+    } catch (IOException e) {
+      if(checkpointFailure == null) {
+        checkpointFailure = new UncheckedIOException(e);
       }
     }
   }
 
   /**
-   * Method to start TransactionManager and execute all operations
+   * Throw the exception the checkpoint writer has thrown, if it has
+   */
+  private void throwCheckpointFailure() {
+    UncheckedIOException exception = checkpointFailure;
+    if(exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Method to start TransactionManager and execute operations one by one as they come
+   * @param operations parsed operations by IOUtils from input file
+   */
+  public void run(Stream<Operation> operations) {
+    operations.forEachOrdered(this::executeOperation);
+    syncLogs();
+  }
+
+  /**
+   * Force values committed since the last sync to the logs, with one fsync per site
+   * Commits in between share it, that's how we avoid one fsync per transaction
+   * Once every site's log is forced, the current time is recorded as durable at all sites
+   * They are only printed and reported to the listener once the sync succeeds,
+   * a commit is never acknowledged before it's durable
+   * @throws UncheckedIOException if a checkpoint could not be written
+   */
+  public void syncLogs() {
+    throwCheckpointFailure();
+    forceLogs();
+  }
+
+  /**
+   * Record that the logs of all sites have been forced up to a time stamp
+   * Commits are only reported after it, replay drops the commits after the last one recorded
+   * @param timeStamp every commit no later than it is durable at all sites
+   */
+  private void writeDurableTimeStamp(int timeStamp) {
+    try {
+      WriteAheadLog.writeDurableTimeStamp(config.getLogDirectory(), timeStamp);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Force the logs and report the commits they make durable
    */
-  public void run() {
-    allOperations.forEach(this::executeOperation);
+  private void forceLogs() {
+    if(unsyncedCommits == 0 && !hasUnsyncedRefreshes) {
+      return;
+    }
+    runOnSites(indexedSites, site -> {
+      try {
+        site.getWriteAheadLog().sync();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    writeDurableTimeStamp(currentTime);
+    unsyncedCommits = 0;
+    hasUnsyncedRefreshes = false;
+    reportCommits();
+    ioUtils.flushOutput();
+  }
+
+  /**
+   * Set the listener told about completed operations and transaction ends
+   * @param listener given to call, null to stop calling
+   */
+  public void setTransactionListener(TransactionListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Get the metrics of this transaction manager, they could be read from any thread
+   * @return the metrics, updated as operations run
+   */
+  public EngineMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Stop the executors of all sites
+   * Logs are closed and running checkpoints finish first, metrics are unregistered last
+   * @throws UncheckedIOException if a checkpoint could not be written
+   * @throws IllegalStateException if the metrics could not be unregistered
+   */
+  public void shutdown() {
+    forceLogs();
+    if(config.getLogDirectory() != null) {
+      runOnSites(indexedSites, site -> {
+        try {
+          site.getWriteAheadLog().close();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+      checkpointWriter.shutdown();
+      try {
+        checkpointWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    sites.forEach(Site::shutdown);
+    ioUtils.flushOutput();
+    try {
+      throwCheckpointFailure();
+    } finally {
+      metrics.unregisterMBean();
+    }
+  }
+
+  /**
+   * Advance the clock by one
+   * The deadlock policy could give up on transactions which have been blocked for too long.
+   * It's called for every operation, and by clients when no operation arrives for a while
+   */
+  void tick() {
+    currentTime = currentTime + 1;
+    abortVictims(deadlockPolicy.onTick(currentTime));
   }
 
   /**
@@ -71,56 +408,77 @@ public class TransactionManager {
    * Doing nothing is because we have aborted this transaction due to deadlock before.
    * @param operation given to execute
    */
-  private void executeOperation(Operation operation) {
-    String op = operation.getName();
-    currentTime = currentTime + 1;
-    Integer transactionID;
-    switch (op) {
-      case IOUtils.BEGIN:
-        IOUtils.beginOutputMessage(operation);
-        allTransactions.add(initTransaction(operation, false, currentTime));
+  void executeOperation(Operation operation) {
+    tick();
+    int transactionID;
+    long startTime;
+    if(isAbortedByDeadLock(operation)) {
+      return;
+    }
+    switch (operation.getType()) {
+      case BEGIN:
+        ioUtils.beginOutputMessage(operation);
+        transactions.put(initTransaction(operation, false, currentTime));
         break;
-      case IOUtils.BEGIN_RO:
-        IOUtils.beginROOutputMessage(operation);
-        allTransactions.add(initTransaction(operation, true, currentTime));
+      case BEGIN_RO:
+        ioUtils.beginROOutputMessage(operation);
+        transactions.put(initTransaction(operation, true, currentTime));
+        activeReadOnlyTimeStamps.add(currentTime);
         break;
-      case IOUtils.DUMP:
+      case DUMP:
         dump();
         break;
-      case IOUtils.END:
-        transactionID = Integer.valueOf(operation.getTransaction().substring(1));
+      case END:
+        transactionID = operation.getTransactionID();
         if(getTransaction(operation).getTransactionStatus()
             == TransactionStatus.SHOULD_BE_ABORT) {
+          metrics.recordSiteFailureAbort();
           abort(transactionID);
         } else if(getTransaction(operation).getTransactionStatus()
             == TransactionStatus.ACTIVE){
-          commit(transactionID);
+          if(isOptimistic && !validate(getTransaction(operation))) {
+            metrics.recordValidationFailure();
+            ioUtils.printAndWrite(String.format("%s fails validation",
+                operation.getTransaction()));
+            abort(transactionID);
+          } else {
+            commit(transactionID);
+          }
         }
+        // the transaction could not be referenced by any later operation
+        transactions.remove(transactionID);
+        ioUtils.flushOutput();
         break;
-      case IOUtils.FAIL:
-        IOUtils.failOutputMessage(operation);
+      case FAIL:
+        checkSite(operation);
+        ioUtils.failOutputMessage(operation);
         fail(operation.getSite());
         break;
-      case IOUtils.READ:
-        if(!read(operation)) {
-          IOUtils.cannotReadOutputMessage(operation);
+      case READ:
+        startTime = System.nanoTime();
+        boolean isRead = read(operation);
+        metrics.recordRead(System.nanoTime() - startTime);
+        if(!isRead) {
+          ioUtils.cannotReadOutputMessage(operation);
         }
         break;
-      case IOUtils.RECOVER:
-        IOUtils.recoverOutputMessage(operation);
+      case RECOVER:
+        checkSite(operation);
+        ioUtils.recoverOutputMessage(operation);
         recover(operation.getSite());
         break;
-      case IOUtils.WRITE:
-        transactionID = Integer.valueOf(operation.getTransaction().substring(1));
-        if(write(operation)) {
-          IOUtils.canWriteOutputMessage(operation);
+      case WRITE:
+        transactionID = operation.getTransactionID();
+        startTime = System.nanoTime();
+        boolean isWritten = write(operation);
+        metrics.recordWrite(System.nanoTime() - startTime);
+        if(isWritten) {
+          ioUtils.canWriteOutputMessage(operation);
         } else {
           // Check prevent print message bug because of deadlock
-          Integer variable = operation.getVariable();
-          if (waitingOperations.containsKey(variable)
-              && waitingOperations.get(variable).contains(operation)
+          if (waitingOperations.contains(operation.getVariable(), operation)
               || waitingSites.containsKey(transactionID)) {
-            IOUtils.cannotWriteOutputMessage(operation);
+            ioUtils.cannotWriteOutputMessage(operation);
           }
         }
         break;
@@ -130,25 +488,67 @@ public class TransactionManager {
   }
 
   /**
-   * Check if there's write operation waiting for the same variable
-   * @param operation given to get variable
-   * @return true if there's write operation waiting for the given variable, false if there's not
+   * Check if the operation reads or writes for a transaction which has been aborted
+   * to break a deadlock, such operations are ignored until the transaction ends
+   * @param operation given to check
+   * @return true if the operation should be ignored
    */
-  private boolean hashWriteWaiting(Operation operation) {
-    Integer variable = operation.getVariable();
-    return (waitingOperations.containsKey(variable)
-        && !waitingOperations.get(variable).contains(operation)
-        && containsWriteOperation(waitingOperations.get(variable)));
+  private boolean isAbortedByDeadLock(Operation operation) {
+    return (operation.getType() == OperationType.READ
+        || operation.getType() == OperationType.WRITE)
+        && getTransaction(operation).getTransactionStatus() == TransactionStatus.IS_FINISHED;
+  }
+
+  /**
+   * Check if a transaction has been aborted to break a deadlock and has not ended yet
+   * @param transactionID given to check
+   * @return true if its reads and writes are ignored until it ends
+   */
+  boolean isAbortedByDeadLock(int transactionID) {
+    Transaction transaction = getTransaction(transactionID);
+    return transaction != null
+        && transaction.getTransactionStatus() == TransactionStatus.IS_FINISHED;
+  }
+
+  /**
+   * End a transaction by aborting it, whatever its status is
+   * Clients do it when a transaction ends while its reads or writes are still blocked,
+   * since the commit could not include them. Nothing happens if it has been aborted already
+   * @param transactionID given to abort
+   */
+  void abortTransaction(int transactionID) {
+    if(getTransaction(transactionID).getTransactionStatus() != TransactionStatus.IS_FINISHED) {
+      abort(transactionID);
+    }
+    // the transaction could not be referenced by any later operation
+    transactions.remove(transactionID);
+    ioUtils.flushOutput();
+  }
+
+  /**
+   * Check if a fail or recover operation gives a site of the topology
+   * @param operation given to check
+   * @throws IllegalArgumentException if there's no such site
+   */
+  private void checkSite(Operation operation) {
+    int site = operation.getSite();
+    if(site < 1 || site > topology.getSiteCount()) {
+      throw new IllegalArgumentException(String.format(
+          "%s(%s) gives an unknown site, sites are indexed from 1 to %s",
+          operation.getName(), site, topology.getSiteCount()));
+    }
   }
 
   /**
-   * Check if there's write operation in the waiting list
-   * @param operations given to check if there's waiting operation
-   * @return true if there's waiting write operation in the list, false if there's not
+   * Check if other operations are queued for the same variable
+   * A new read must not overtake them, otherwise a waiting write could starve
+   * @param operation given to get variable
+   * @return true if other operations are waiting for the given variable, false if not
    */
-  private boolean containsWriteOperation(List<Operation> operations) {
-    operations.stream().filter(operation -> operation.getName().equals(IOUtils.WRITE));
-    return operations.size() > 0;
+  private boolean hashWriteWaiting(Operation operation) {
+    int variable = operation.getVariable();
+    return waitingOperations.hasWaiting(variable)
+        && !waitingOperations.contains(variable, operation);
   }
 
   /**
@@ -167,17 +567,49 @@ public class TransactionManager {
    * @param transactionID given to abort
    */
   private void abort(Integer transactionID) {
-    IOUtils.abortOutputMessage(transactionID);
-    commitOrAbort(transactionID, false);
+    long startTime = System.nanoTime();
+    ioUtils.abortOutputMessage(transactionID);
+    wakeBlockOperations(commitOrAbort(transactionID, false));
+    metrics.recordAbort(System.nanoTime() - startTime);
+    if(listener != null) {
+      listener.onAbort(transactionID);
+    }
   }
 
   /**
    * Commit a transaction
+   * If the engine keeps logs, the commit is only reported once its log entries are forced,
+   * which happens when enough commits are waiting to share one sync. Operations waiting for
+   * its locks are woken up after reporting it
    * @param transactionID given to commit
    */
   private void commit(Integer transactionID) {
-    IOUtils.commitOutputMessage(transactionID);
-    commitOrAbort(transactionID, true);
+    long startTime = System.nanoTime();
+    Set<Integer> holdVariables = commitOrAbort(transactionID, true);
+    unreportedCommits.add(transactionID);
+    if(config.getLogDirectory() == null) {
+      reportCommits();
+    } else if(config.getCheckpointInterval() > 0
+        && ++commitsSinceCheckpoint >= config.getCheckpointInterval()) {
+      checkpoint();
+    } else if(++unsyncedCommits >= config.getGroupCommitSize()) {
+      syncLogs();
+    }
+    metrics.recordCommit(System.nanoTime() - startTime);
+    wakeBlockOperations(holdVariables);
+  }
+
+  /**
+   * Print the commits which are durable, and tell the listener about them in commit order
+   */
+  private void reportCommits() {
+    for(Integer transactionID : unreportedCommits) {
+      ioUtils.commitOutputMessage(transactionID);
+      if(listener != null) {
+        listener.onCommit(transactionID);
+      }
+    }
+    unreportedCommits.clear();
   }
 
   /**
@@ -185,7 +617,6 @@ public class TransactionManager {
    * Mark the given site to be down
    * Mark all the transactions holding lock to be 'SHOULD_BE_ABORTED'
    * Clear the lock table
-   * Revert all the variables' current values to committed values
    * @param site given to fail
    */
   private void fail(Integer site) {
@@ -193,58 +624,195 @@ public class TransactionManager {
     failSite.setIsDown(true);
 
     // Mark all transactions which have accessed items in this site 'SHOULD_BE_ABORTED'
-    LockManager lockManager = failSite.getLockManager();
-    DataManager dataManager = failSite.getDataManager();
-
-    List<Integer> holdVariables = new ArrayList<>();
-
-    lockManager.getReadLocks().forEach((key, value) -> {
-      holdVariables.add(key);
-      value.forEach(transaction ->
-          getTransaction(transaction).setTransactionStatus(TransactionStatus.SHOULD_BE_ABORT));
-    });
+    onSite(failSite, TransactionManager::clearFailedSite).forEach(transaction ->
+        getTransaction(transaction).setTransactionStatus(TransactionStatus.SHOULD_BE_ABORT));
+    // optimistic transactions hold no locks, they remember the sites they have read from
+    if(isOptimistic) {
+      transactions.forEach(transaction -> {
+        if(transaction.getTransactionStatus() == TransactionStatus.ACTIVE
+            && !transaction.isReadOnly() && transaction.getWorkspace().hasReadFrom(site)) {
+          transaction.setTransactionStatus(TransactionStatus.SHOULD_BE_ABORT);
+        }
+      });
+    }
+  }
 
-    lockManager.getWriteLock().forEach((key, value) -> {
-      holdVariables.add(key);
-      getTransaction(value).setTransactionStatus(TransactionStatus.SHOULD_BE_ABORT);
-    });
+  /**
+   * Erase the lock table of a failed site
+   * Uncommitted values are only kept in workspaces, so nothing at the site has to be reverted
+   * @param site which fails
+   * @return transactions which held locks at the site
+   */
+  private static List<Integer> clearFailedSite(Site site) {
+    LockManager lockManager = site.getLockManager();
 
-    holdVariables.forEach(dataManager::updateToCommittedValue);
+    List<Integer> lockHolders = new ArrayList<>(lockManager.getLockHolders());
 
     // erase all the locks
-    lockManager.getReadLocks().clear();
-    lockManager.getWriteLock().clear();
+    lockManager.clear();
+    return lockHolders;
   }
 
   /**
    * Recover a site
+   * Replicated copies at this site are stale until they catch up with the other copies,
+   * copies still stale at other sites get another chance to catch up as well
    * Wake up operations which are being blocked since this site is down
    * @param site index given to recover
    */
   private void recover(Integer site) {
     Site failSite = sites.get(site);
+    List<Integer> replicatedVariables = new ArrayList<>();
+    for(int variable = 1; variable <= topology.getVariableCount(); variable++) {
+      if(topology.isReplicated(variable) && topology.getSites(variable).contains(site)) {
+        replicatedVariables.add(variable);
+      }
+    }
+    onSite(failSite, recoveredSite -> {
+      recoveredSite.getDataManager().markStale(replicatedVariables);
+      return null;
+    });
     failSite.setIsDown(false);
+    refreshStaleCopies(failSite);
 
-    // erase site from waiting sites lists
-    for(Map.Entry<Integer, List<Integer>> entry : waitingSites.entrySet()) {
-      List<Integer> sites = entry.getValue();
-      sites.remove(site);
+    // reads of copies which stayed stale after an earlier recovery might go on now
+    List<Integer> refreshedVariables = new ArrayList<>();
+    for(Site staleSite : indexedSites) {
+      if(staleSite != failSite && !staleSite.isDown()) {
+        refreshedVariables.addAll(refreshStaleCopies(staleSite));
+      }
     }
+    wakeBlockOperations(new TreeSet<>(refreshedVariables));
 
-    // If a list is empty after removal, it means this operation is waiting for nothing
-    // and could be waked up
+    // Operations waiting for this site could be waked up, since the quorum they are waiting for
+    // might be reached now. They are blocked again if it still could not be reached
+    List<Integer> wakeTransactions = new ArrayList<>();
     waitingSites.forEach((key, value) -> {
-      if(value.size() == 0) {
-        Operation operation = getTransaction(key).getCurrentOperation();
-        if(operation.getName().equals(IOUtils.READ)) {
-          read(operation);
-        } else if(operation.getName().equals(IOUtils.WRITE)) {
-          write(operation);
-        } else {
-          throw new IllegalArgumentException("This operation should not be blocked");
+      if(value.contains(site)) {
+        wakeTransactions.add(key);
+      }
+    });
+    wakeTransactions.forEach(transactionID -> {
+      waitingSites.remove(transactionID);
+      Transaction transaction = getTransaction(transactionID);
+      // it might have been aborted because of deadlock when we woke up another one
+      if(transaction.getTransactionStatus() == TransactionStatus.IS_FINISHED) {
+        return;
+      }
+      Operation operation = transaction.getCurrentOperation();
+      if(operation.getType() == OperationType.READ) {
+        read(operation);
+      } else if(operation.getType() == OperationType.WRITE) {
+        write(operation);
+      } else {
+        throw new IllegalArgumentException("This operation should not be blocked");
+      }
+    });
+  }
+
+  /**
+   * Bring the stale copies at a site up to date
+   * We ask all other sites which are up for the versions they have committed after ours, every
+   * site sends all of them in one batch, and the newest ones are installed. A copy is readable
+   * again once the copies asked, counting itself, are enough to meet every write quorum.
+   * Otherwise it stays stale until more sites are up or a transaction writes it
+   * Installed versions are appended to the log of the site, and forced by the next sync,
+   * so a crash could not bring back the values they replace
+   * @param site given to refresh
+   * @return variables which are readable at the site again
+   */
+  private List<Integer> refreshStaleCopies(Site site) {
+    // write locked copies are refreshed when the writer commits
+    Checkpoint versions = onSite(site, staleSite -> {
+      List<Integer> staleVariables = staleSite.getDataManager().getStaleVariables();
+      staleVariables.removeIf(staleSite.getLockManager()::isWriteLocked);
+      return staleSite.getDataManager().getLatestVersions(staleVariables);
+    });
+    if(versions.size() == 0) {
+      return Collections.emptyList();
+    }
+
+    List<Site> peers = new ArrayList<>();
+    for(Site peer : indexedSites) {
+      if(peer != site && !peer.isDown()) {
+        peers.add(peer);
+      }
+    }
+    Map<Integer, int[]> newestVersions = new TreeMap<>();
+    onSites(peers, peer -> peer.getDataManager().getNewerVersions(versions)).forEach(delta -> {
+      for(int i = 0; i < delta.size(); i++) {
+        int[] newest = newestVersions.get(delta.getVariable(i));
+        if(newest == null || delta.getCommitTimeStamp(i) > newest[1]) {
+          newestVersions.put(delta.getVariable(i),
+              new int[] {delta.getValue(i), delta.getCommitTimeStamp(i)});
+        }
+      }
+    });
+
+    List<Integer> refreshedVariables = new ArrayList<>();
+    for(int i = 0; i < versions.size(); i++) {
+      Integer variable = versions.getVariable(i);
+      int askedCopies = 1;
+      for(Integer index : topology.getSites(variable)) {
+        if(!index.equals(site.getIndex()) && !sites.get(index).isDown()) {
+          askedCopies++;
         }
       }
+      if(askedCopies > topology.getSites(variable).size() - topology.getWriteQuorum(variable)) {
+        refreshedVariables.add(variable);
+      }
+    }
+
+    int[] variables = new int[newestVersions.size()];
+    int[] values = new int[newestVersions.size()];
+    int[] commitTimeStamps = new int[newestVersions.size()];
+    int count = 0;
+    for(Map.Entry<Integer, int[]> entry : newestVersions.entrySet()) {
+      variables[count] = entry.getKey();
+      values[count] = entry.getValue()[0];
+      commitTimeStamps[count] = entry.getValue()[1];
+      count++;
+    }
+    Checkpoint delta = new Checkpoint(currentTime, variables, values, commitTimeStamps);
+    int installedCount = onSite(site, staleSite -> {
+      List<Integer> installedVariables = staleSite.getDataManager().installVersions(delta);
+      logInstalledVersions(staleSite, installedVariables);
+      staleSite.getDataManager().markRefreshed(refreshedVariables);
+      return installedVariables.size();
     });
+    if(installedCount > 0 && config.getLogDirectory() != null) {
+      hasUnsyncedRefreshes = true;
+    }
+    return refreshedVariables;
+  }
+
+  /**
+   * Append versions copied from other sites to the log of a site if there is one
+   * A log entry has one commit time stamp, so versions are appended in one entry per
+   * time stamp, in the order they are committed
+   * @param site which installed the versions
+   * @param installedVariables variables which got a new version
+   */
+  private static void logInstalledVersions(Site site, List<Integer> installedVariables) {
+    WriteAheadLog writeAheadLog = site.getWriteAheadLog();
+    if(writeAheadLog == null || installedVariables.isEmpty()) {
+      return;
+    }
+    DataManager dataManager = site.getDataManager();
+    // commit time stamp -> variables committed at that time
+    Map<Integer, List<Integer>> variablesByTimeStamp = new TreeMap<>();
+    installedVariables.forEach(variable -> variablesByTimeStamp
+        .computeIfAbsent(dataManager.getLastCommitTimeStamp(variable), key -> new ArrayList<>())
+        .add(variable));
+    try {
+      for(Map.Entry<Integer, List<Integer>> entry : variablesByTimeStamp.entrySet()) {
+        List<Integer> values = new ArrayList<>(entry.getValue().size());
+        entry.getValue().forEach(variable -> values.add(dataManager.getCommittedValue(variable)));
+        writeAheadLog.append(entry.getKey(), entry.getValue(), values);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   /**
@@ -253,15 +821,17 @@ public class TransactionManager {
    * If there is lock conflict in one site, then we also cannot read from it
    * Get value if we can read
    * Put operation to the waiting list if there's no available sites to read from
-   * Detect if there's deadlock after blocking this operation.
-   * Abort the youngest transaction if there's deadlock right now
+   * The deadlock policy is told after blocking this operation, and aborts its victims
    * @param operation given to run read operation
    * @return true if we there exists any site to read from, false if all sites are unavailable
    */
   private boolean read(Operation operation) {
 
     Transaction transaction = getTransaction(operation);
-    Integer variable = operation.getVariable();
+    int variable = operation.getVariable();
+    if(transaction.getTransactionStatus() == TransactionStatus.IS_FINISHED) {
+      return false;
+    }
 
     // set current operation
     transaction.setCurrentOperation(operation);
@@ -269,193 +839,389 @@ public class TransactionManager {
     if(transaction.isReadOnly()) {
       readVariableForReadOnly(variable, transaction);
       return true;
+    } else if(transaction.getWorkspace().hasWritten(variable)) {
+      // values written by a transaction stay in its workspace until it commits
+      readWrittenValue(variable, transaction);
+      return true;
+    } else if(isOptimistic) {
+      return readVariableOptimistically(variable, transaction, operation);
     } else {
-      // If the variable is odd number
-      if(variable % 2 == 1) {
-        return readVariableWithOddIndex(variable, transaction, operation);
-      } else {
-        return readVariableWithEvenIndex(variable, transaction, operation);
-      }
+      return readVariableFromSites(variable, transaction, operation);
     }
   }
 
   /**
-   * Read a variable for read only transaction
+   * Read a variable without taking locks
+   * We read the newest committed value of a read quorum, and remember its version to validate it
+   * when the transaction ends. The read waits only if there's no quorum of copies which are up
+   * and not stale
    * @param variable given to read
-   * @param transaction given to get transaction status
+   * @param transaction given to record the read in its workspace
+   * @param operation given to block if we cannot read
+   * @return true if can read, false if cannot read
    */
-  private void readVariableForReadOnly(Integer variable, Transaction transaction) {
-    if(variable % 2 == 1) {
-      Site site = sites.get((1 + variable) % 10);
-      readVariable(site, variable, true, transaction);
-    } else {
-      readVariable(sites.get(1), variable, true, transaction);
+  private boolean readVariableOptimistically(
+      int variable,
+      Transaction transaction,
+      Operation operation) {
+    int transactionID = operation.getTransactionID();
+    List<Site> quorum = findQuorum(variable, topology.getReadQuorum(variable),
+        operation, transactionID, true);
+    if(quorum == null) {
+      return false;
     }
+    Workspace workspace = transaction.getWorkspace();
+    List<Integer> versions = onSites(quorum, site ->
+        site.getDataManager().getLastCommitTimeStamp(variable));
+    int newest = indexOfNewest(versions);
+    workspace.recordRead(variable, versions.get(newest));
+    quorum.forEach(site -> workspace.addReadSite(site.getIndex()));
+    readVariable(quorum.get(newest), variable, transaction);
+    // granted by a refresh, it's not waiting for a recovery any more
+    stopWaitingForSites(transactionID);
+    grant(transaction);
+    return true;
   }
 
   /**
-   * Read value of a variable with even index
+   * Read and print the value a transaction has written to its workspace
    * @param variable given to read
-   * @param transaction given to get status and build waits for graph if cannot read
-   * @param operation given to block if we cannot read
-   * @return true if can read, false if cannot read
+   * @param transaction which has written the variable
    */
-  private boolean readVariableWithEvenIndex(
-      Integer variable,
-      Transaction transaction,
-      Operation operation) {
-    Integer transactionID = Integer.valueOf(operation.getTransaction().substring(1));
-    for(int i = 1; i <= 10; ++i) {
-      Site site = sites.get(i);
-      if(!site.isDown() && site.getLockManager()
-          .canRead(variable, transactionID)) {
-        return canReadPreventWriteStarvation(site, variable, operation, transactionID, transaction);
+  private void readWrittenValue(int variable, Transaction transaction) {
+    int value = transaction.getWorkspace().getWrittenValue(variable);
+    if (transaction.getTransactionStatus() == TransactionStatus.ACTIVE) {
+      ioUtils.canReadOutputMessage(transaction, variable, value);
+    }
+    if (listener != null) {
+      listener.onRead(transaction.getCurrentOperation(), value);
+    }
+  }
+
+  /**
+   * Check if an optimistic transaction could commit
+   * Every version it has read must still be the newest one of the variable, otherwise
+   * a transaction committed after the read has overwritten it. Every variable it has written
+   * needs a write quorum of copies which are up
+   * @param transaction given to validate
+   * @return true if the transaction could commit
+   */
+  private boolean validate(Transaction transaction) {
+    Workspace workspace = transaction.getWorkspace();
+    for(Map.Entry<Integer, Integer> read : workspace.getReads().entrySet()) {
+      int variable = read.getKey();
+      List<Integer> versions = onSites(getCopies(variable), site ->
+          site.getDataManager().getLastCommitTimeStamp(variable));
+      if(Collections.max(versions) > read.getValue()) {
+        return false;
       }
     }
-    sites.stream().skip(1).forEach(site ->
-        blockOperation(site, variable, operation, transactionID, true));
-    return false;
+    for(Integer variable : workspace.getWrites().keySet()) {
+      if(findWriteQuorum(variable) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Find the first copies of a variable which are up, enough for a write quorum
+   * @param variable given to write
+   * @return sites in ascending order of index, null if too many copies are down
+   */
+  private List<Site> findWriteQuorum(Integer variable) {
+    int quorumSize = topology.getWriteQuorum(variable);
+    List<Site> quorum = new ArrayList<>(quorumSize);
+    for(Site site : getCopies(variable)) {
+      if(!site.isDown()) {
+        quorum.add(site);
+        if(quorum.size() == quorumSize) {
+          return quorum;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Read a variable for read only transaction
+   * Read-only transactions never take locks, they read the snapshot as of their begin time
+   * from the copy which has the latest version in that snapshot. The replica selector
+   * decides among copies having the same version
+   * @param variable given to read
+   * @param transaction given to get transaction status
+   */
+  private void readVariableForReadOnly(int variable, Transaction transaction) {
+    List<Site> copies = getOrderedCopies(variable, transaction);
+    readVariable(findNewest(copies, site ->
+        site.getDataManager().getCommitTimeStamp(variable, transaction.getTimeStamp())),
+        variable, transaction);
   }
 
   /**
-   * Read value of a variable with odd index
+   * Read value of a variable from a read quorum of the sites storing it
+   * Block the operation at unavailable sites if there's not enough sites available
    * @param variable given to read
-   * @param transaction given to get status and build waits for graph if cannot read
+   * @param transaction given to get status and tell the deadlock policy if cannot read
    * @param operation given to block if we cannot read
    * @return true if can read, false if cannot read
    */
-  private boolean readVariableWithOddIndex(
-      Integer variable,
+  private boolean readVariableFromSites(
+      int variable,
       Transaction transaction,
       Operation operation) {
-    Site site = sites.get((1 + variable) % 10);
-    Integer transactionID = Integer.valueOf(operation.getTransaction().substring(1));
-    boolean canRead = site.getLockManager().canRead(variable, transactionID);
-    if(site.isDown() || !canRead) {
-      blockOperation(site, variable, operation, transactionID, true);
+    int transactionID = operation.getTransactionID();
+    List<Site> quorum = findQuorum(variable, topology.getReadQuorum(variable),
+        operation, transactionID, true);
+    if(quorum == null) {
       return false;
-    } else {
-      return canReadPreventWriteStarvation(site, variable, operation, transactionID, transaction);
     }
+    return canReadPreventWriteStarvation(quorum, variable, operation, transactionID, transaction);
   }
 
   /**
    * Check if we could read variable with consideration of write starvation
-   * @param site given to check lock table
+   * @param quorum sites we could read from, the first one is used to check lock table
    * @param variable used to block operation
    * @param operation used to be blocked if there's write starvation
-   * @param transactionID used to build wait for graph
+   * @param transactionID used to find the lock holders it waits for
    * @param transaction used to read variable if there's not write starvation
    * @return true if we could read a variable
    * false if there's write starvation and we need to block that operation
    */
   private boolean canReadPreventWriteStarvation(
-      Site site,
-      Integer variable,
+      List<Site> quorum,
+      int variable,
       Operation operation,
-      Integer transactionID,
+      int transactionID,
       Transaction transaction) {
-    if(!site.getLockManager().getWriteLock().containsKey(variable)
+    Site site = quorum.get(0);
+    if(!onSite(site, quorumSite -> quorumSite.getLockManager().isWriteLocked(variable))
         && hashWriteWaiting(operation)) {
       putToWaitingOperations(variable, operation);
-      checkReadLocks(site, variable, transactionID);
+      resolveBlock(transactionID, getReadLockHolders(site, variable));
       return false;
     }
-    site.getLockManager().addReadLock(variable, transactionID);
-    readVariable(site, variable, false, transaction);
+    // lock all copies in the quorum, and find the copy committed last meanwhile
+    Site newest = findNewest(quorum, quorumSite -> {
+      quorumSite.getLockManager().addReadLock(variable, transactionID);
+      return quorumSite.getDataManager().getLastCommitTimeStamp(variable);
+    });
+    readVariable(newest, variable, transaction);
+    // granted by a release or a refresh, it's not waiting for a recovery any more
+    stopWaitingForSites(transactionID);
+    grant(transaction);
     return true;
   }
 
+  /**
+   * Run a task returning a time stamp on several sites, and find the site with the largest one
+   * Sites with their own threads run the task in parallel
+   * @param targets sites given to run the task
+   * @param task working on the data of each site
+   * @return the first site with the largest time stamp
+   */
+  private Site findNewest(List<Site> targets, ToIntFunction<Site> task) {
+    if(isConcurrentSites) {
+      List<Integer> timeStamps = onSites(targets, task::applyAsInt);
+      return targets.get(indexOfNewest(timeStamps));
+    }
+    Site newest = targets.get(0);
+    int newestTimeStamp = task.applyAsInt(newest);
+    for(int i = 1; i < targets.size(); i++) {
+      int timeStamp = task.applyAsInt(targets.get(i));
+      if(timeStamp > newestTimeStamp) {
+        newest = targets.get(i);
+        newestTimeStamp = timeStamp;
+      }
+    }
+    return newest;
+  }
+
+  /**
+   * Find the first of the largest time stamps
+   * @param timeStamps given to compare
+   * @return index of the newest time stamp
+   */
+  private int indexOfNewest(List<Integer> timeStamps) {
+    int newest = 0;
+    for(int i = 1; i < timeStamps.size(); i++) {
+      if(timeStamps.get(i) > timeStamps.get(newest)) {
+        newest = i;
+      }
+    }
+    return newest;
+  }
+
   /**
    * Execute write operation
-   * Write the new value only if all the sites which store the corresponding variable is available
-   * Block the operation if there's at least one site available
-   * Check if there's deadlock if we block this operation, and abort the youngest transaction
-   * if there's deadlock circle
+   * Write locks are taken only if a write quorum of the sites storing the variable is available,
+   * the new value is kept in the workspace of the transaction until it commits
+   * Block the operation if there are too many sites unavailable
+   * The deadlock policy is told if we block this operation, and aborts its victims
    * @param operation given to write new value
    * @return true if we could write, false if we cannot
    */
   private boolean write(Operation operation) {
     Transaction transaction = getTransaction(operation);
-    Integer value = operation.getWritesToValue();
-    Integer variable = operation.getVariable();
-    Integer transactionID = Integer.valueOf(operation.getTransaction().substring(1));
+    int value = operation.getWritesToValue();
+    int variable = operation.getVariable();
+    int transactionID = operation.getTransactionID();
+    if(transaction.getTransactionStatus() == TransactionStatus.IS_FINISHED) {
+      return false;
+    }
 
     // set current operation
     transaction.setCurrentOperation(operation);
 
-    // if it's odd number
-    if(variable % 2 == 1) {
-      Site site = sites.get((1 + variable) % 10);
-      if(site.isDown() || !site.getLockManager().canWrite(variable, transactionID)) {
-        blockOperation(site, variable, operation, transactionID, false);
-        return false;
-      } else {
-        site.getLockManager().addWriteLock(variable, transactionID);
-        site.getDataManager().updateValue(variable, value);
-        return true;
+    if(isOptimistic) {
+      // nothing is locked or written to the sites until the transaction commits
+      transaction.getWorkspace().write(variable, value);
+      if(listener != null) {
+        listener.onWrite(operation);
       }
+      return true;
+    }
+
+    List<Site> quorum = findQuorum(variable, topology.getWriteQuorum(variable),
+        operation, transactionID, false);
+    if(quorum == null) {
+      return false;
     } else {
-      if(!canWrite(variable, transactionID, operation)) {
-        return false;
-      } else {
-        sites.stream().skip(1).forEach(site -> {
-          site.getLockManager().addWriteLock(variable, transactionID);
-          site.getDataManager().updateValue(variable, value);
-        });
-        return true;
+      runOnSites(quorum, site -> site.getLockManager().addWriteLock(variable, transactionID));
+      transaction.getWorkspace().write(variable, value);
+      // granted by a release or a refresh, it's not waiting for a recovery any more
+      stopWaitingForSites(transactionID);
+      grant(transaction);
+      if(listener != null) {
+        listener.onWrite(operation);
       }
+      return true;
     }
   }
 
   /**
-   * Check if we could write variable with even index to new value
-   * @param variable given to write
+   * Find a quorum of sites storing the variable which are up and have no lock conflicts
+   * Lock tables of all copies are checked in parallel if sites have their own threads,
+   * then sites are looked at in the order the replica selector gives for reads, and in
+   * ascending order of index for writes. Once so many sites are unavailable
+   * that the quorum could not be reached any more, the operation is blocked at them
+   * @param variable given to read or write
+   * @param quorumSize number of sites we need
+   * @param operation given to block if there's no quorum
    * @param transactionID given to check locks
-   * @param operation given to block if cannot write
-   * @return true if can write and false if cannot write
+   * @param isReadOperation if we check read locks or write locks
+   * @return the sites in the quorum, reused by the next call, null if the operation is blocked
    */
-  private boolean canWrite(
-      Integer variable,
-      Integer transactionID,
-      Operation operation) {
-    for(int i = 1; i <= 10; i++) {
-      Site site = sites.get(i);
-      if(site.isDown()
-          || !site.getLockManager().canWrite(variable, transactionID)) {
-        blockOperation(site, variable, operation, transactionID, false);
-        return false;
+  private List<Site> findQuorum(
+      int variable,
+      int quorumSize,
+      Operation operation,
+      int transactionID,
+      boolean isReadOperation) {
+    List<Site> copies = isReadOperation
+        ? getOrderedCopies(variable, getTransaction(transactionID))
+        : getCopies(variable);
+    // inline sites are only checked until the quorum is reached
+    List<Boolean> noConflicts = isConcurrentSites
+        ? onSites(copies, site -> hasNoConflict(site, variable, transactionID, isReadOperation))
+        : null;
+    List<Site> availableSites = quorumSites;
+    availableSites.clear();
+    // allocated once a copy is unavailable, which is rare
+    List<Site> unavailableSites = Collections.emptyList();
+    for(int i = 0; i < copies.size(); i++) {
+      Site site = copies.get(i);
+      if(!site.isDown() && (noConflicts == null
+          ? hasNoConflict(site, variable, transactionID, isReadOperation)
+          : noConflicts.get(i))) {
+        availableSites.add(site);
+        if(availableSites.size() == quorumSize) {
+          return availableSites;
+        }
+      } else {
+        if(unavailableSites.isEmpty()) {
+          unavailableSites = new ArrayList<>();
+        }
+        unavailableSites.add(site);
+        if(unavailableSites.size() > copies.size() - quorumSize) {
+          break;
+        }
       }
     }
-    return true;
+    // an operation retried after a release is still the same block, and counted only once
+    boolean wasQueued = waitingOperations.contains(variable, operation);
+    boolean isQueued = false;
+    boolean isLockConflict = false;
+    for(Site site : unavailableSites) {
+      // a victim aborted at a previous site might have released what we wait for,
+      // the operation has been granted then and must not be queued again
+      if(isQueued && !waitingOperations.contains(variable, operation)) {
+        break;
+      }
+      isLockConflict |= blockOperation(site, variable, operation, transactionID, isReadOperation);
+      isQueued = waitingOperations.contains(variable, operation);
+    }
+    if(isLockConflict && !wasQueued) {
+      metrics.recordLockConflict();
+    }
+    return null;
+  }
+
+  /**
+   * Check if a transaction could lock a copy of a variable at a site
+   * @param site storing the copy
+   * @param variable given to read or write
+   * @param transactionID given to check locks
+   * @param isReadOperation if we check read locks or write locks
+   * @return true if there's no lock conflict, and the copy is not stale for a read
+   */
+  private static boolean hasNoConflict(
+      Site site,
+      int variable,
+      int transactionID,
+      boolean isReadOperation) {
+    // a stale copy could not be read
+    return isReadOperation
+        ? site.getLockManager().canRead(variable, transactionID)
+            && !site.getDataManager().isStale(variable)
+        : site.getLockManager().canWrite(variable, transactionID);
   }
 
   /**
    * Block an operation
    * If this operation is waiting for a variable, then put it into waiting variable list
-   * and waits for graph. After that, detect deadlock, abort transaction if there exists
+   * and tell the deadlock policy which transactions it waits for, victims are aborted
    * If the operation is waiting ofr a down site, then put it into waiting site list
+   * Nothing is blocked if the transaction has been aborted as a deadlock victim
+   * while we blocked it at a previous site
    * @param site used to get lock table and see if it's down
    * @param variable used to find waiting lists of operations
    * @param operation given to block
-   * @param transactionID used to build waits for graph
+   * @param transactionID used to find the lock holders it waits for
+   * @return true if the operation waits for transactions holding locks at the site
    */
-  private void blockOperation(
+  private boolean blockOperation(
       Site site,
-      Integer variable,
+      int variable,
       Operation operation,
-      Integer transactionID,
+      int transactionID,
       boolean isReadOperation) {
+    if(getTransaction(transactionID).getTransactionStatus() == TransactionStatus.IS_FINISHED) {
+      return false;
+    }
     if(!site.isDown()) {
-      if (isReadOperation) {
-        blockRead(site, variable, operation, transactionID);
-      } else {
-        blockWrite(site, variable, operation, transactionID);
+      putToWaitingOperations(variable, operation);
+      List<Integer> holders = getWriteLockHolders(site, variable);
+      if(!isReadOperation) {
+        holders.addAll(0, getReadLockHolders(site, variable));
       }
-      detectDeadLock();
-    } else {
-      addToWaitingSiteList(transactionID, site.getIndex());
+      resolveBlock(transactionID, holders);
+      // a stale copy is no lock conflict
+      return !holders.isEmpty();
     }
+    addToWaitingSiteList(transactionID, site.getIndex());
+    return false;
   }
 
   /**
@@ -463,36 +1229,15 @@ public class TransactionManager {
    * Sorted per site with all values per site in ascending order by variable name
    */
   private void dump() {
-    for (int i = 1; i <= 10; i++) {
+    onSites(indexedSites, site -> {
       StringBuilder stringBuilder = new StringBuilder();
-      stringBuilder.append("site ").append(i).append(" - ");
-      Map<Integer, Integer> sortedVariables = sites.get(i)
-          .getDataManager()
-          .getAllSortedCommittedValues();
+      stringBuilder.append("site ").append(site.getIndex()).append(" - ");
+      Map<Integer, Integer> sortedVariables = site.getDataManager().getAllSortedCommittedValues();
       sortedVariables.forEach((key, value) ->
           stringBuilder.append("x").append(key).append(": ").append(value).append(", "));
-      System.out.println(stringBuilder);
-      IOUtils.writeToOutputFile(stringBuilder.toString());
-    }
-  }
-
-  /**
-   * Get a waiting operation from waiting operation list
-   * @param holdVariable given to get a list of operations which are being blocked by this variable
-   * @return Operation which will be executed
-   */
-  private Operation getOneWaitingOperation(Integer holdVariable) {
-    Operation waitingOperation;
-    waitingOperations.get(holdVariable).remove(0);
-    if (waitingOperations.get(holdVariable).size() == 0) {
-      waitingOperations.remove(holdVariable);
-    }
-    if (!waitingOperations.containsKey(holdVariable)) {
-      waitingOperation = null;
-    } else {
-      waitingOperation = waitingOperations.get(holdVariable).get(0);
-    }
-    return waitingOperation;
+      return stringBuilder.toString();
+    }).forEach(ioUtils::printAndWrite);
+    ioUtils.flushOutput();
   }
 
   /**
@@ -501,6 +1246,7 @@ public class TransactionManager {
    * @param site that is down and this transaction is waiting for
    */
   private void addToWaitingSiteList(Integer transactionID, Integer site) {
+    markBlocked(getTransaction(transactionID));
     if(waitingSites.containsKey(transactionID)) {
       waitingSites.get(transactionID).add(site);
     } else {
@@ -511,60 +1257,37 @@ public class TransactionManager {
 
   /**
    * Read and print value of a variable
+   * Read-only transactions read the version committed before they began,
+   * other transactions read the committed value, their own writes are read from their workspaces
    * @param site given to read variable
    * @param variable given to read
-   * @param readCommittedValue if we should read committed value or current value
    * @param transaction given for print important debugging information
-   * @return
    */
   private void readVariable(
       Site site,
-      Integer variable,
-      boolean readCommittedValue,
+      int variable,
       Transaction transaction) {
-    Integer value = readCommittedValue ? site.getDataManager().getCommittedValue(variable) :
-        site.getDataManager().getCurValue(variable);
+    int value = onSiteAsInt(site, copy -> transaction.isReadOnly()
+        ? copy.getDataManager().getCommittedValue(variable, transaction.getTimeStamp())
+        : copy.getDataManager().getCommittedValue(variable));
     if (transaction.getTransactionStatus() == TransactionStatus.ACTIVE) {
-      IOUtils.canReadOutputMessage(transaction, variable, value);
+      ioUtils.canReadOutputMessage(transaction, variable, value);
     }
-  }
-
-  /**
-   * Block a write operation
-   * Put this operation to waiting list and wait for graph used for deadlock detection
-   * @param site used to get lock table
-   * @param variable used to put operation to correct list
-   * @param operation given to put into blocking lists
-   * @param transactionID given to build wait for graph
-   */
-  private void blockWrite(
-      Site site,
-      Integer variable,
-      Operation operation,
-      Integer transactionID) {
-    if (!site.isDown()) {
-      putToWaitingOperations(variable, operation);
-      checkReadLocks(site, variable, transactionID);
-      checkWriteLocks(site, variable, transactionID);
+    site.addServedRead();
+    replicaSelector.onRead(transaction, site);
+    if (listener != null) {
+      listener.onRead(transaction.getCurrentOperation(), value);
     }
   }
 
   /**
-   * Block a read operation
-   * Put this operation to waiting list and wait for graph used for deadlock detection
-   * @param site used to get lock table
-   * @param variable used to put operation to correct list
-   * @param operation given to put into blocking lists
-   * @param transactionID given to build wait for graph
+   * Stop a transaction waiting for down sites once its operation is granted
+   * @param transactionID given to remove from the waiting site list
    */
-  private void blockRead(
-      Site site,
-      Integer variable,
-      Operation operation,
-      Integer transactionID) {
-    if (!site.isDown()) {
-      putToWaitingOperations(variable, operation);
-      checkWriteLocks(site, variable, transactionID);
+  private void stopWaitingForSites(int transactionID) {
+    // nothing is boxed while no transaction waits for a site, which is the usual case
+    if(!waitingSites.isEmpty()) {
+      waitingSites.remove(transactionID);
     }
   }
 
@@ -574,125 +1297,89 @@ public class TransactionManager {
    * @param operation which should be blocked
    */
   private void putToWaitingOperations(Integer variable, Operation operation) {
-    if (waitingOperations.containsKey(variable)) {
-      if (!waitingOperations.get(variable).contains(operation)) {
-        waitingOperations.get(variable).add(operation);
-      }
-    } else {
-      waitingOperations.put(variable, new ArrayList<>());
-      waitingOperations.get(variable).add(operation);
-    }
+    waitingOperations.enqueue(variable, operation);
   }
 
   /**
-   * Build waiting graph
-   * @param waitForTransaction which is blocking transactionID
-   * @param transactionID which need to wait waitForTransaction
+   * Get the transaction holding the write lock of a variable at a site
+   * @param site give to get lock table
+   * @param var given to check correct write lock
+   * @return the writer, empty if there's none
    */
-  private void putToWaitingGraph(Integer waitForTransaction, Integer transactionID) {
-    if (!waitForTransaction.equals(transactionID)) {
-      if (waitsForGraph.containsKey(transactionID)) {
-        if (!waitsForGraph.get(transactionID).contains(waitForTransaction)) {
-          waitsForGraph.get(transactionID).add(waitForTransaction);
-        }
-      } else {
-        waitsForGraph.put(transactionID, new ArrayList<>());
-        waitsForGraph.get(transactionID).add(waitForTransaction);
-      }
+  private List<Integer> getWriteLockHolders(Site site, Integer var) {
+    int t = onSite(site, lockSite -> lockSite.getLockManager().getWriter(var));
+    List<Integer> holders = new ArrayList<>();
+    if (t != LockManager.NO_TRANSACTION) {
+      holders.add(t);
     }
+    return holders;
   }
 
   /**
-   * Check write locks in order to put transaction to wait for graph
+   * Get transactions holding read locks of a variable at a site
    * @param site give to get lock table
-   * @param var given to check correct write lock
-   * @param transactionID given to put in graph
+   * @param var given to check correct read locks
+   * @return the readers, in the order they got the lock
    */
-  private void checkWriteLocks(
-      Site site,
-      Integer var,
-      Integer transactionID) {
-    if (site.getLockManager().getWriteLock().containsKey(var)) {
-      Integer t = site.getLockManager().getWriteLock().get(var);
-      putToWaitingGraph(t, transactionID);
-    }
+  private List<Integer> getReadLockHolders(Site site, Integer var) {
+    return onSite(site, lockSite -> lockSite.getLockManager().getReaders(var));
   }
 
   /**
-   * Check read locks in order to put transaction to wait for graph
-   * @param site give to get lock table
-   * @param var given to check correct write lock
-   * @param transactionID given to put in graph
+   * Tell the deadlock policy a transaction has been blocked, and abort the victims it picks
+   * @param transactionID which has just been blocked
+   * @param holders transactions holding the locks it waits for
    */
-  private void checkReadLocks(
-      Site site,
-      Integer var,
-      Integer transactionID) {
-    if (site.getLockManager().getReadLocks().containsKey(var)) {
-      site.getLockManager().getReadLocks().get(var).forEach(t -> {
-        putToWaitingGraph(t, transactionID);
-      });
-    }
+  private void resolveBlock(Integer transactionID, List<Integer> holders) {
+    markBlocked(getTransaction(transactionID));
+    List<Transaction> holderTransactions = new ArrayList<>(holders.size());
+    holders.forEach(holder -> holderTransactions.add(getTransaction(holder)));
+    abortVictims(deadlockPolicy.onBlock(getTransaction(transactionID), holderTransactions,
+        currentTime));
   }
 
   /**
-   * If there is deadlock, we abort the youngest transaction
-   * Set the youngest transaction to 'IS_FINISHED'
+   * Abort transactions picked by the deadlock policy
+   * Victims which have finished meanwhile are skipped
+   * @param victims given to abort
    */
-  private void detectDeadLock() {
-    if(containsDeadLock()) {
-      IOUtils.printAndWrite("DeadLock detected, "
-          + "we will abort the youngest Transaction in deadlock cycle");
-      // Find the youngest transaction
-      Integer youngestTransaction = null;
-      Integer latestTime = Integer.MIN_VALUE;
-      for(Integer visitedTransaction : visitedTransactions) {
-        if(getTransaction(visitedTransaction).getTimeStamp() > latestTime) {
-          latestTime = getTransaction(visitedTransaction).getTimeStamp();
-          youngestTransaction = visitedTransaction;
-        }
+  private void abortVictims(List<Transaction> victims) {
+    int abortedVictims = 0;
+    for(Transaction victim : victims) {
+      if(victim.getTransactionStatus() != TransactionStatus.IS_FINISHED) {
+        ioUtils.printAndWrite(deadlockPolicy.getAbortMessage(victim));
+        abort(victim.getId());
+        abortedVictims++;
       }
-      abort(youngestTransaction);
-      getTransaction(youngestTransaction).setTransactionStatus(TransactionStatus.IS_FINISHED);
+    }
+    if(abortedVictims > 0) {
+      metrics.recordDeadlock(abortedVictims);
     }
   }
 
   /**
-   * Check if there is a deadlock
-   * @return true if there exists a deadlock
+   * Start measuring how long the current operation of a transaction is blocked
+   * Nothing changes if it's already blocked, like when it waits at several sites
+   * @param transaction whose operation is blocked
    */
-  private boolean containsDeadLock() {
-    for(Transaction transaction : allTransactions) {
-      Integer transactionID = Integer.valueOf(transaction.getName().substring(1));
-      visitedTransactions.clear();
-      if(containsCircle(transactionID)) {
-        return true;
-      }
+  private void markBlocked(Transaction transaction) {
+    if(transaction.getBlockedSince() == 0) {
+      transaction.setBlockedSince(System.nanoTime());
+      metrics.recordBlock();
     }
-    return false;
   }
 
   /**
-   * DFS to check if there's a circle from a given node
-   * @param transactionID node starts to traverse from
-   * @return true if there's a circle, false if there is not
+   * Record how long the granted operation of a transaction has been blocked,
+   * and tell the deadlock policy it doesn't wait any more
+   * @param transaction whose operation is granted
    */
-  private boolean containsCircle(Integer transactionID) {
-    if(visitedTransactions.contains(transactionID)) {
-      return true;
-    } else {
-       visitedTransactions.add(transactionID);
-    }
-    if(!waitsForGraph.containsKey(transactionID)) {
-      return false;
-    }
-    for (int i = 0; i < waitsForGraph.get(transactionID).size(); i++) {
-      if(containsCircle(waitsForGraph.get(transactionID).get(i))) {
-        return true;
-      }
+  private void grant(Transaction transaction) {
+    if(transaction.getBlockedSince() != 0) {
+      metrics.recordBlockedTime(System.nanoTime() - transaction.getBlockedSince());
+      transaction.setBlockedSince(0);
     }
-    visitedTransactions.remove(transactionID);
-    return false;
+    deadlockPolicy.onGrant(transaction);
   }
 
   /**
@@ -701,10 +1388,7 @@ public class TransactionManager {
    * @return a Transaction
    */
   private Transaction getTransaction(Operation operation) {
-    List<Transaction> transactions = allTransactions.stream()
-        .filter(transaction -> transaction.getName().equals(operation.getTransaction()))
-        .collect(Collectors.toList());
-    return transactions.get(0);
+    return transactions.get(operation.getTransactionID());
   }
 
   /**
@@ -713,130 +1397,274 @@ public class TransactionManager {
    * @return a Transaction
    */
   private Transaction getTransaction(Integer transactionIndex) {
-    List<Transaction> transactions = allTransactions.stream()
-        .filter(transaction -> transaction.getName().equals(
-            "T" + transactionIndex))
-        .collect(Collectors.toList());
-    return transactions.get(0);
+    return transactions.get(transactionIndex);
   }
 
   /**
    * Commit or abort a transaction based on the parameter given
-   * Firstly, we remove this transaction in the waits for graph
+   * Firstly, we tell the deadlock policy this transaction could not be blocked any more
    * Then we release all the locks held by this transaction
-   * Update committed value to current value if commit
-   * Update current value to committed value if abort
-   * Finally we wake up operations which are waiting for variables held by this transaction
+   * Values in the workspace are written to the write locked copies and committed if commit,
+   * nothing has to be undone if abort
+   * Optimistic transactions hold no locks, their buffered writes are applied to write quorums
+   * The transaction is marked 'IS_FINISHED' once we start
+   * Operations waiting for the variables it held are not woken up here, so the caller could
+   * report the commit or abort first
    * @param transactionID given to commit ot abort
    * @param shouldCommit true if we should commit this transaction,
    * false if we should abort this transaction
+   * @return variables held by this transaction, to wake operations waiting for them
    */
-  private void commitOrAbort(Integer transactionID, boolean shouldCommit) {
-
-    removeFromWaitsForGraph(transactionID);
-    removeFromWaitingOperations(transactionID);
+  private Set<Integer> commitOrAbort(Integer transactionID, boolean shouldCommit) {
+
+    // operations of this transaction might still be referenced while we wake up others,
+    // they should not run any more
+    getTransaction(transactionID).setTransactionStatus(TransactionStatus.IS_FINISHED);
+
+    deadlockPolicy.onFinish(getTransaction(transactionID));
+    replicaSelector.onFinish(getTransaction(transactionID));
+    waitingOperations.removeTransaction(transactionID);
+    waitingSites.remove(transactionID);
+
+    Set<Integer> holdVariables = new TreeSet<>();
+    Integer commitTimeStamp = currentTime;
+    Integer oldestActiveTimeStamp = getOldestActiveTimeStamp();
+    if(isOptimistic) {
+      // nothing is locked, and aborted writes have never left the workspace
+      if(shouldCommit && !getTransaction(transactionID).isReadOnly()) {
+        holdVariables.addAll(applyWrites(getTransaction(transactionID).getWorkspace().getWrites(),
+            commitTimeStamp, oldestActiveTimeStamp));
+      }
+    } else {
+      Map<Integer, Integer> writes = shouldCommit && !getTransaction(transactionID).isReadOnly()
+          ? getTransaction(transactionID).getWorkspace().getWrites() : Collections.emptyMap();
+      releaseLocks(transactionID, writes, commitTimeStamp, oldestActiveTimeStamp)
+          .forEach(holdVariables::addAll);
+    }
+    if(getTransaction(transactionID).isReadOnly()) {
+      endReadOnlyTransaction(getTransaction(transactionID));
+    }
+    return holdVariables;
+  }
 
-    List<Integer> holdVariables = new ArrayList<>();
+  /**
+   * Release the locks of a transaction at all sites, applying its writes first if it commits
+   * Every copy it has write locked gets the value of its workspace, an aborted transaction
+   * has nothing to undo since its writes have never left the workspace
+   * @param transactionID given to release locks
+   * @param writes variable -> value to commit, empty if the transaction aborts
+   * @param commitTimeStamp time the new versions are committed at
+   * @param oldestActiveTimeStamp begin time of the oldest active read-only transaction
+   * @return variables the transaction held locks on, per site
+   */
+  private List<List<Integer>> releaseLocks(
+      Integer transactionID,
+      Map<Integer, Integer> writes,
+      Integer commitTimeStamp,
+      Integer oldestActiveTimeStamp) {
     // Iterate all sites and find variables which transaction holds lock on, and remove locks.
-    for (int i = 1; i <= 10; ++i) {
-      Site site = sites.get(i);
-
-      holdVariables.addAll(findVariables(site, transactionID));
+    // Lock managers index locks by transaction, so we only visit what this transaction holds
+    return onSites(indexedSites, site -> {
+      LockManager lockManager = site.getLockManager();
+      List<Integer> siteVariables = lockManager.getHeldVariables(transactionID);
+
+      if (!writes.isEmpty()) {
+        commitValues(site, lockManager.getWriteLockedVariables(transactionID), writes,
+            commitTimeStamp, oldestActiveTimeStamp);
+      }
+      lockManager.releaseAllLocks(transactionID);
+      return siteVariables;
+    });
+  }
 
-      if (shouldCommit) {
-        // Update committed to current values
-        updateCommitValues(site, transactionID);
-      } else {
-        // Revert current value to committed value
-        revertCurrentValue(site, transactionID);
+  /**
+   * Apply buffered writes to a write quorum of copies of every variable and commit them
+   * Every site gets all of its writes in one task, and the sites work in parallel
+   * @param writes variable -> value, in ascending order of variable
+   * @param commitTimeStamp time the new versions are committed at
+   * @param oldestActiveTimeStamp begin time of the oldest active read-only transaction
+   * @return variables written
+   */
+  private Set<Integer> applyWrites(
+      Map<Integer, Integer> writes,
+      Integer commitTimeStamp,
+      Integer oldestActiveTimeStamp) {
+    // site index -> variables written at that site
+    Map<Integer, List<Integer>> siteVariables = new TreeMap<>();
+    for(Integer variable : writes.keySet()) {
+      for(Site site : findWriteQuorum(variable)) {
+        siteVariables.computeIfAbsent(site.getIndex(), key -> new ArrayList<>()).add(variable);
       }
-      releaseAllLocks(site, transactionID);
     }
-    wakeBlockOperations(holdVariables);
+    List<Site> targets = new ArrayList<>(siteVariables.size());
+    siteVariables.keySet().forEach(index -> targets.add(sites.get(index)));
+    runOnSites(targets, site -> commitValues(site, siteVariables.get(site.getIndex()), writes,
+        commitTimeStamp, oldestActiveTimeStamp));
+    return writes.keySet();
   }
 
   /**
-   * Remove this transaction from waitsForGraph
-   * @param transactionID given to remove
+   * Stop tracking the snapshot of a finished read-only transaction
+   * If it was the oldest snapshot, versions nobody could read any more are dropped at all sites
+   * @param transaction read-only transaction which ends
    */
-  private void removeFromWaitsForGraph(Integer transactionID) {
-    for(Map.Entry<Integer, List<Integer>> entry : waitsForGraph.entrySet()) {
-      entry.getValue().remove(transactionID);
+  private void endReadOnlyTransaction(Transaction transaction) {
+    boolean isOldest = transaction.getTimeStamp().equals(activeReadOnlyTimeStamps.first());
+    activeReadOnlyTimeStamps.remove(transaction.getTimeStamp());
+    if(isOldest) {
+      Integer oldestActiveTimeStamp = getOldestActiveTimeStamp();
+      runOnSites(indexedSites, site -> site.getDataManager().collectGarbage(oldestActiveTimeStamp));
     }
-    waitsForGraph.entrySet().removeIf(entry -> entry.getKey().equals(transactionID)
-        || entry.getValue().size() == 0);
   }
 
   /**
-   * Remove this transaction from waiting operation lists
-   * @param transactionID given to remove
+   * Get the begin time stamp of the oldest active read-only transaction
+   * @return the oldest time stamp, or Integer.MAX_VALUE if there's no read-only transaction
    */
-  private void removeFromWaitingOperations(Integer transactionID) {
-    for(Map.Entry<Integer, List<Operation>> entry: waitingOperations.entrySet()) {
-      entry.getValue().removeIf(operation -> operation.getTransaction().equals("T" + transactionID));
-    }
-    waitingOperations.entrySet().removeIf(entry -> entry.getValue().size() == 0);
+  private Integer getOldestActiveTimeStamp() {
+    return activeReadOnlyTimeStamps.isEmpty() ? Integer.MAX_VALUE
+        : activeReadOnlyTimeStamps.first();
   }
 
   /**
-   * Find variables held by given transaction in a given site
-   * @param site given to find hold variables
-   * @param transactionID given to find variables
-   * @return a list of variables which are being held
+   * Commit values written by a transaction to variables at a site
+   * New committed values are appended to the log of the site if there is one
+   * @param site storing the variables
+   * @param variables given to commit
+   * @param writes variable -> value written by the transaction
+   * @param commitTimeStamp time the new versions are committed at
+   * @param oldestActiveTimeStamp begin time of the oldest active read-only transaction
    */
-  private List<Integer> findVariables(Site site, Integer transactionID) {
-    // Add all variables holding by this transaction to a list
-    List<Integer> holdVariables = new ArrayList<>();
-    site.getLockManager().getReadLocks().forEach((key, value) -> {
-      if (value.contains(transactionID) && !holdVariables.contains(key)) {
-        holdVariables.add(key);
+  private static void commitValues(
+      Site site,
+      List<Integer> variables,
+      Map<Integer, Integer> writes,
+      Integer commitTimeStamp,
+      Integer oldestActiveTimeStamp) {
+    DataManager dataManager = site.getDataManager();
+    variables.forEach(variable -> dataManager.commitValue(variable, writes.get(variable),
+        commitTimeStamp, oldestActiveTimeStamp));
+    WriteAheadLog writeAheadLog = site.getWriteAheadLog();
+    if(writeAheadLog != null && !variables.isEmpty()) {
+      List<Integer> values = new ArrayList<>(variables.size());
+      variables.forEach(variable -> values.add(site.getDataManager().getCommittedValue(variable)));
+      try {
+        writeAheadLog.append(commitTimeStamp, variables, values);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
       }
-    });
+    }
+  }
 
-    site.getLockManager().getWriteLock().forEach((key, value) -> {
-      if(value.equals(transactionID) && !holdVariables.contains(key)) {
-        holdVariables.add(key);
-      }
-    });
-    return holdVariables;
+  /**
+   * Get the sites storing copies of a variable
+   * @param variable given to find copies
+   * @return sites in ascending order of index
+   */
+  private List<Site> getCopies(int variable) {
+    return copiesByVariable.get(variable);
+  }
+
+  /**
+   * Get the sites storing copies of a variable in the order a read tries them
+   * @param variable given to find copies
+   * @param transaction which reads the variable
+   * @return sites in the order the replica selector gives, reused by the next read
+   */
+  private List<Site> getOrderedCopies(int variable, Transaction transaction) {
+    List<Site> copies = getCopies(variable);
+    orderedCopies.clear();
+    // added one by one, addAll would copy them to a new array first
+    for(int i = 0; i < copies.size(); i++) {
+      orderedCopies.add(copies.get(i));
+    }
+    return replicaSelector.order(variable, transaction, orderedCopies);
   }
 
   /**
-   * Update commit value of a variable to its current value
-   * @param site used to get lock table
-   * @param transactionID used to check if the variable if holding by this transaction
+   * Run a task on a site and wait for its result
+   * @param site given to run the task
+   * @param task working on lock table or data of the site
+   * @return result of the task
    */
-  private void updateCommitValues(Site site, Integer transactionID) {
-    site.getLockManager().getWriteLock().forEach((key, value) -> {
-      if (value.equals(transactionID)) {
-        site.getDataManager().updateToCurValue(key);
+  private <T> T onSite(Site site, Function<Site, T> task) {
+    if(!isConcurrentSites) {
+      return task.apply(site);
+    }
+    return join(site.submit(() -> task.apply(site)));
+  }
+
+  /**
+   * Run a task with an int result on a site and wait for it, nothing is boxed for inline sites
+   * @param site given to run the task
+   * @param task working on lock table or data of the site
+   * @return result of the task
+   */
+  private int onSiteAsInt(Site site, ToIntFunction<Site> task) {
+    if(!isConcurrentSites) {
+      return task.applyAsInt(site);
+    }
+    return join(site.submit(() -> task.applyAsInt(site)));
+  }
+
+  /**
+   * Run a task on several sites in parallel and wait for all of them
+   * Results are in the order of the sites given, no matter which site finishes first
+   * @param targets sites given to run the task
+   * @param task working on lock table or data of each site
+   * @return results of the task
+   */
+  private <T> List<T> onSites(List<Site> targets, Function<Site, T> task) {
+    if(!isConcurrentSites) {
+      List<T> results = new ArrayList<>(targets.size());
+      for(int i = 0; i < targets.size(); i++) {
+        results.add(task.apply(targets.get(i)));
       }
-    });
+      return results;
+    }
+    List<Future<T>> futures = new ArrayList<>(targets.size());
+    targets.forEach(site -> futures.add(site.submit(() -> task.apply(site))));
+    List<T> results = new ArrayList<>(futures.size());
+    futures.forEach(future -> results.add(join(future)));
+    return results;
   }
 
   /**
-   * Revert current value of a variable to its commit value
-   * @param site used to get lock table
-   * @param transactionID used to check if the variable if holding by this transaction
+   * Run a task without result on several sites in parallel and wait for all of them
+   * @param targets sites given to run the task
+   * @param task working on lock table or data of each site
    */
-  private void revertCurrentValue(Site site, Integer transactionID) {
-    site.getLockManager().getWriteLock().forEach((key, value) -> {
-      if (value.equals(transactionID)) {
-        site.getDataManager().updateToCommittedValue(key);
+  private void runOnSites(List<Site> targets, Consumer<Site> task) {
+    if(!isConcurrentSites) {
+      for(int i = 0; i < targets.size(); i++) {
+        task.accept(targets.get(i));
       }
+      return;
+    }
+    onSites(targets, site -> {
+      task.accept(site);
+      return null;
     });
   }
 
   /**
-   * Release all the locks
-   * @param site given to get lock table
-   * @param transactionID used to release locks
+   * Wait for the result of a task submitted to a site
+   * Exceptions thrown by the task are thrown again here
+   * @param future of the task
+   * @return result of the task
    */
-  private void releaseAllLocks(Site site, Integer transactionID) {
-    site.getLockManager().getReadLocks().forEach((key, value) -> value.remove(transactionID));
-    site.getLockManager()
-        .getWriteLock().entrySet().removeIf(entry -> entry.getValue().equals(transactionID));
-    site.getLockManager().getReadLocks().entrySet().removeIf(entry -> entry.getValue().size() == 0);
+  private static <T> T join(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a site", e);
+    } catch (ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
   }
 
   /**
@@ -844,30 +1672,38 @@ public class TransactionManager {
    * the released variables held by the transaction
    * @param holdVariables which are held by the transaction before
    */
-  private void wakeBlockOperations(List<Integer> holdVariables) {
-    holdVariables.forEach(holdVariable -> {
-      if (waitingOperations.containsKey(holdVariable)) {
-        Operation waitingOperation = waitingOperations.get(holdVariable).get(0);
-        boolean flag = true;
-        while (waitingOperation != null && flag) {
-          if (waitingOperation.getName().equals(IOUtils.READ)) {
-            if (read(waitingOperation)) {
-              waitingOperation = getOneWaitingOperation(holdVariable);
-            } else {
-              flag = false;
-            }
-          } else if (waitingOperation.getName().equals(IOUtils.WRITE)) {
-            if (write(waitingOperation)) {
-              IOUtils.canWriteOutputMessage(waitingOperation);
-              waitingOperation = getOneWaitingOperation(holdVariable);
-            } else {
-              flag = false;
-            }
-          } else {
-            throw new IllegalArgumentException("This operation should not be blocked");
-          }
+  private void wakeBlockOperations(Collection<Integer> holdVariables) {
+    holdVariables.forEach(this::grantWaitingOperations);
+  }
+
+  /**
+   * Grant operations waiting for a released variable in FIFO order
+   * Compatible operations at the head, like a run of reads, are granted as one batch,
+   * we stop at the first one which still has to wait, so the cost is proportional
+   * to what we grant
+   * @param variable which has been released
+   */
+  private void grantWaitingOperations(Integer variable) {
+    Operation waitingOperation = waitingOperations.peek(variable);
+    while (waitingOperation != null) {
+      if (getTransaction(waitingOperation).getTransactionStatus()
+          == TransactionStatus.IS_FINISHED) {
+        // aborted by a deadlock while we were waking up other operations
+      } else if (waitingOperation.getType() == OperationType.READ) {
+        if (!read(waitingOperation)) {
+          return;
+        }
+      } else if (waitingOperation.getType() == OperationType.WRITE) {
+        if (!write(waitingOperation)) {
+          return;
         }
+        ioUtils.canWriteOutputMessage(waitingOperation);
+      } else {
+        throw new IllegalArgumentException("This operation should not be blocked");
       }
-    });
+      // the queue might have changed if a transaction was aborted while we executed it
+      waitingOperations.remove(variable, waitingOperation);
+      waitingOperation = waitingOperations.peek(variable);
+    }
   }
 }
@@ -0,0 +1,133 @@
+package cs.nyu.edu.adb;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+public class TransactionRegistry {
+
+  private static final int INITIAL_CAPACITY = 16;
+  private static final int EMPTY = -1;
+
+  // open addressing table, keys are transaction ids, EMPTY marks a free slot
+  private int[] keys;
+  private Transaction[] transactions;
+  private int size;
+
+  public TransactionRegistry() {
+    keys = new int[INITIAL_CAPACITY];
+    transactions = new Transaction[INITIAL_CAPACITY];
+    Arrays.fill(keys, EMPTY);
+    size = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Register a transaction under its id
+   * @param transaction given to register
+   */
+  public void put(Transaction transaction) {
+    if(2 * (size + 1) > keys.length) {
+      resize(2 * keys.length);
+    }
+    int slot = findSlot(keys, transaction.getId());
+    if(keys[slot] == EMPTY) {
+      keys[slot] = transaction.getId();
+      size++;
+    }
+    transactions[slot] = transaction;
+  }
+
+  /**
+   * Get a transaction by its id
+   * @param transactionID given to look up
+   * @return the transaction, or null if it is not registered
+   */
+  public Transaction get(int transactionID) {
+    int slot = findSlot(keys, transactionID);
+    return keys[slot] == EMPTY ? null : transactions[slot];
+  }
+
+  /**
+   * Evict a transaction from the registry
+   * Entries after the removed one are shifted back so lookups never need tombstones
+   * @param transactionID given to remove
+   */
+  public void remove(int transactionID) {
+    int slot = findSlot(keys, transactionID);
+    if(keys[slot] == EMPTY) {
+      return;
+    }
+    int mask = keys.length - 1;
+    int next = slot;
+    while(true) {
+      next = (next + 1) & mask;
+      if(keys[next] == EMPTY) {
+        break;
+      }
+      int home = hash(keys[next]) & mask;
+      // move the entry back if its home slot is not between the hole and itself
+      if(((next - home) & mask) >= ((next - slot) & mask)) {
+        keys[slot] = keys[next];
+        transactions[slot] = transactions[next];
+        slot = next;
+      }
+    }
+    keys[slot] = EMPTY;
+    transactions[slot] = null;
+    size--;
+  }
+
+  /**
+   * Run an action on every registered transaction
+   * @param action given to run
+   */
+  public void forEach(Consumer<Transaction> action) {
+    for(int i = 0; i < keys.length; i++) {
+      if(keys[i] != EMPTY) {
+        action.accept(transactions[i]);
+      }
+    }
+  }
+
+  /**
+   * Find the slot holding the given key, or the free slot where it should be inserted
+   * @param table given to probe
+   * @param key given to find
+   * @return index of the slot
+   */
+  private static int findSlot(int[] table, int key) {
+    int mask = table.length - 1;
+    int slot = hash(key) & mask;
+    while(table[slot] != EMPTY && table[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Grow the table and re-insert all transactions
+   * @param capacity new capacity, always a power of two
+   */
+  private void resize(int capacity) {
+    int[] oldKeys = keys;
+    Transaction[] oldTransactions = transactions;
+    keys = new int[capacity];
+    transactions = new Transaction[capacity];
+    Arrays.fill(keys, EMPTY);
+    for(int i = 0; i < oldKeys.length; i++) {
+      if(oldKeys[i] != EMPTY) {
+        int slot = findSlot(keys, oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        transactions[slot] = oldTransactions[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package cs.nyu.edu.adb;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Deadlock prevention by time stamps, no waits-for graph is kept
+ * An older transaction waits for younger holders, a younger one blocked by an older holder
+ * aborts itself. Transactions only wait for younger ones, so there could never be a cycle
+ */
+public class WaitDiePolicy implements DeadlockPolicy {
+
+  @Override
+  public List<Transaction> onBlock(
+      Transaction transaction,
+      List<Transaction> holders,
+      int currentTime) {
+    for(Transaction holder : holders) {
+      if(holder.getTimeStamp() < transaction.getTimeStamp()) {
+        return Collections.singletonList(transaction);
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  @Override
+  public void onFinish(Transaction transaction) {
+  }
+
+  @Override
+  public String getAbortMessage(Transaction victim) {
+    return String.format("%s dies waiting for an older transaction", victim.getName());
+  }
+}
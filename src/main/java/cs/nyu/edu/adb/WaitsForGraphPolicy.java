@@ -0,0 +1,133 @@
+package cs.nyu.edu.adb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deadlock detection on a waits-for graph, the youngest transaction of a cycle is aborted
+ */
+public class WaitsForGraphPolicy implements DeadlockPolicy {
+
+  // transaction index -> transactions it waits for
+  private Map<Integer, Set<Integer>> waitsForGraph;
+
+  // transaction index -> transaction, for every transaction in the graph
+  private Map<Integer, Transaction> transactions;
+
+  public WaitsForGraphPolicy() {
+    waitsForGraph = new HashMap<>();
+    transactions = new HashMap<>();
+  }
+
+  /**
+   * Add edges from the blocked transaction to the holders, then look for cycles
+   * Waits for graph has no cycle before the given transaction gets blocked,
+   * so any new cycle must go through the edges we just added for it. There could be
+   * several of them, we keep looking without the victims picked so far until none is left
+   * @param transaction which has just been blocked
+   * @param holders transactions holding the conflicting locks, in the order they are found
+   * @param currentTime time of the operation being executed
+   * @return the youngest transaction of every cycle, empty if there's no cycle
+   */
+  @Override
+  public List<Transaction> onBlock(
+      Transaction transaction,
+      List<Transaction> holders,
+      int currentTime) {
+    transactions.put(transaction.getId(), transaction);
+    for(Transaction holder : holders) {
+      if(holder.getId() != transaction.getId()) {
+        transactions.put(holder.getId(), holder);
+        waitsForGraph.computeIfAbsent(transaction.getId(), key -> new LinkedHashSet<>())
+            .add(holder.getId());
+      }
+    }
+    List<Transaction> victims = new ArrayList<>();
+    Set<Integer> victimIDs = new HashSet<>();
+    List<Integer> cycle = new ArrayList<>();
+    // victims are marked visited, so cycles through them are not found again
+    while(findCycle(transaction.getId(), transaction.getId(), new HashSet<>(victimIDs), cycle)) {
+      Transaction youngestTransaction = null;
+      for(Integer transactionInCycle : cycle) {
+        Transaction candidate = transactions.get(transactionInCycle);
+        if(youngestTransaction == null
+            || candidate.getTimeStamp() > youngestTransaction.getTimeStamp()) {
+          youngestTransaction = candidate;
+        }
+      }
+      victims.add(youngestTransaction);
+      victimIDs.add(youngestTransaction.getId());
+      if(youngestTransaction.getId() == transaction.getId()) {
+        // every cycle left goes through the blocked transaction, they're all broken
+        break;
+      }
+      cycle.clear();
+    }
+    return victims;
+  }
+
+  /**
+   * Remove the edges going out of the granted transaction, it waits for nobody now
+   * Edges pointing to it stay, since transactions blocked by it keep waiting
+   * @param transaction which has been granted
+   */
+  @Override
+  public void onGrant(Transaction transaction) {
+    waitsForGraph.remove(transaction.getId());
+  }
+
+  /**
+   * Remove the transaction from the graph, together with edges pointing to it
+   * @param transaction which has finished
+   */
+  @Override
+  public void onFinish(Transaction transaction) {
+    Integer transactionID = transaction.getId();
+    for(Map.Entry<Integer, Set<Integer>> entry : waitsForGraph.entrySet()) {
+      entry.getValue().remove(transactionID);
+    }
+    waitsForGraph.entrySet().removeIf(entry -> entry.getKey().equals(transactionID)
+        || entry.getValue().size() == 0);
+    transactions.remove(transactionID);
+  }
+
+  @Override
+  public String getAbortMessage(Transaction victim) {
+    return "DeadLock detected, we will abort the youngest Transaction in deadlock cycle";
+  }
+
+  /**
+   * DFS to find a path in waits for graph which leads back to the start transaction
+   * @param transactionID node we are visiting now
+   * @param start transaction the cycle should go back to
+   * @param visitedTransactions nodes which have been visited
+   * @param path from start to current node, it is the full cycle if we find one
+   * @return true if there's a circle through start, false if there is not
+   */
+  private boolean findCycle(
+      Integer transactionID,
+      Integer start,
+      Set<Integer> visitedTransactions,
+      List<Integer> path) {
+    visitedTransactions.add(transactionID);
+    path.add(transactionID);
+    for(Integer waitForTransaction
+        : waitsForGraph.getOrDefault(transactionID, Collections.emptySet())) {
+      if(waitForTransaction.equals(start)) {
+        return true;
+      }
+      if(!visitedTransactions.contains(waitForTransaction)
+          && findCycle(waitForTransaction, start, visitedTransactions, path)) {
+        return true;
+      }
+    }
+    path.remove(path.size() - 1);
+    return false;
+  }
+}
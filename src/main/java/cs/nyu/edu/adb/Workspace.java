@@ -0,0 +1,118 @@
+package cs.nyu.edu.adb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class Workspace {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  // variables written by the transaction and not applied to any site yet, in ascending order,
+  // and the values written to them at the same positions. Nothing is boxed, so writing
+  // a variable again allocates nothing
+  private int[] writtenVariables;
+  private int[] writtenValues;
+  private int writeCount;
+
+  // variable -> commit time stamp of the version the transaction read first
+  private Map<Integer, Integer> reads;
+
+  // indexes of the sites values were read from
+  private Set<Integer> readSites;
+
+  public Workspace() {
+    writtenVariables = new int[INITIAL_CAPACITY];
+    writtenValues = new int[INITIAL_CAPACITY];
+    reads = new HashMap<>();
+    readSites = new HashSet<>();
+  }
+
+  /**
+   * Buffer a write, a later write of the same variable replaces it
+   * @param variable given to write
+   * @param value written to the variable
+   */
+  public void write(int variable, int value) {
+    int position = Arrays.binarySearch(writtenVariables, 0, writeCount, variable);
+    if(position >= 0) {
+      writtenValues[position] = value;
+      return;
+    }
+    position = -position - 1;
+    if(writeCount == writtenVariables.length) {
+      writtenVariables = Arrays.copyOf(writtenVariables, writeCount * 2);
+      writtenValues = Arrays.copyOf(writtenValues, writeCount * 2);
+    }
+    System.arraycopy(writtenVariables, position, writtenVariables, position + 1,
+        writeCount - position);
+    System.arraycopy(writtenValues, position, writtenValues, position + 1, writeCount - position);
+    writtenVariables[position] = variable;
+    writtenValues[position] = value;
+    writeCount++;
+  }
+
+  public boolean hasWritten(int variable) {
+    return Arrays.binarySearch(writtenVariables, 0, writeCount, variable) >= 0;
+  }
+
+  /**
+   * Get the value the transaction has written to a variable
+   * @param variable given to find the value
+   * @return the value written last
+   * @throws IllegalArgumentException if the variable is not written
+   */
+  public int getWrittenValue(int variable) {
+    int position = Arrays.binarySearch(writtenVariables, 0, writeCount, variable);
+    if(position < 0) {
+      throw new IllegalArgumentException(String.format("x%s is not written", variable));
+    }
+    return writtenValues[position];
+  }
+
+  /**
+   * Get a copy of the buffered writes, it's only built when the transaction ends
+   * @return variable -> value, in ascending order of variable
+   */
+  public Map<Integer, Integer> getWrites() {
+    Map<Integer, Integer> writes = new TreeMap<>();
+    for(int i = 0; i < writeCount; i++) {
+      writes.put(writtenVariables[i], writtenValues[i]);
+    }
+    return Collections.unmodifiableMap(writes);
+  }
+
+  /**
+   * Record the version a read has seen, only the first read of a variable is kept
+   * since later ones could only see the same version if the transaction is valid
+   * @param variable which is read
+   * @param commitTimeStamp commit time stamp of the version read
+   */
+  public void recordRead(int variable, int commitTimeStamp) {
+    reads.putIfAbsent(variable, commitTimeStamp);
+  }
+
+  /**
+   * Record that a read has used a site, the transaction could not commit if it fails
+   * @param site index of the site
+   */
+  public void addReadSite(int site) {
+    readSites.add(site);
+  }
+
+  /**
+   * Get the versions read
+   * @return variable -> commit time stamp of the version read first
+   */
+  public Map<Integer, Integer> getReads() {
+    return Collections.unmodifiableMap(reads);
+  }
+
+  public boolean hasReadFrom(int site) {
+    return readSites.contains(site);
+  }
+}
@@ -0,0 +1,35 @@
+package cs.nyu.edu.adb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deadlock prevention by time stamps, no waits-for graph is kept
+ * An older transaction blocked by younger holders aborts them, a younger one waits.
+ * Transactions only wait for older ones, so there could never be a cycle
+ */
+public class WoundWaitPolicy implements DeadlockPolicy {
+
+  @Override
+  public List<Transaction> onBlock(
+      Transaction transaction,
+      List<Transaction> holders,
+      int currentTime) {
+    List<Transaction> victims = new ArrayList<>();
+    for(Transaction holder : holders) {
+      if(holder.getTimeStamp() > transaction.getTimeStamp() && !victims.contains(holder)) {
+        victims.add(holder);
+      }
+    }
+    return victims;
+  }
+
+  @Override
+  public void onFinish(Transaction transaction) {
+  }
+
+  @Override
+  public String getAbortMessage(Transaction victim) {
+    return String.format("%s is wounded by an older transaction", victim.getName());
+  }
+}
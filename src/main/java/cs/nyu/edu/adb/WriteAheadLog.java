@@ -0,0 +1,315 @@
+package cs.nyu.edu.adb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+public class WriteAheadLog implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // commit time stamp, number of values and the checksum
+  private static final int ENTRY_OVERHEAD = 3 * Integer.BYTES;
+
+  // variable and value
+  private static final int VALUE_SIZE = 2 * Integer.BYTES;
+
+  // time stamp and its checksum
+  private static final int MARKER_SIZE = 2 * Integer.BYTES;
+
+  // file in the log directory giving the time stamp every site's log is durable up to
+  private static final String DURABLE_MARKER = "durable.marker";
+
+  public interface RecordConsumer {
+
+    /**
+     * Called for every value found in the log, in the order they are committed
+     * @param commitTimeStamp time the value is committed at
+     * @param variable the value belongs to
+     * @param value committed
+     */
+    void accept(int commitTimeStamp, int variable, int value);
+  }
+
+  private Path directory;
+  private int site;
+
+  // the log is split into segments, so the ones a checkpoint covers could be deleted.
+  // Only the last segment is appended to
+  private int segment;
+  private FileChannel channel;
+  private ByteBuffer buffer;
+  private CRC32 checksum;
+
+  // true if records have been appended since the last sync
+  private boolean isDirty;
+
+  /**
+   * Open the log of a site, entries are appended to a new segment after the existing ones
+   * @param directory where logs are kept
+   * @param site index of the site
+   * @throws IOException if the segment could not be created
+   */
+  public WriteAheadLog(Path directory, int site) throws IOException {
+    this.directory = directory;
+    this.site = site;
+    TreeMap<Integer, Path> segments = getSegments(directory, site);
+    segment = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+    channel = openSegment(directory, site, segment);
+    buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    checksum = new CRC32();
+    isDirty = false;
+  }
+
+  /**
+   * Get the segment files of the log of a site
+   * @param directory where logs are kept
+   * @param site index of the site
+   * @return segment number -> segment file, in the order they are written
+   * @throws IOException if the directory could not be listed
+   */
+  public static TreeMap<Integer, Path> getSegments(Path directory, int site) throws IOException {
+    TreeMap<Integer, Path> segments = new TreeMap<>();
+    String prefix = String.format("site-%s-", site);
+    try(Stream<Path> files = Files.list(directory)) {
+      files.forEach(file -> {
+        String name = file.getFileName().toString();
+        if(name.startsWith(prefix) && name.endsWith(".wal")) {
+          String number = name.substring(prefix.length(), name.length() - ".wal".length());
+          if(!number.isEmpty() && number.chars().allMatch(Character::isDigit)) {
+            segments.put(Integer.parseInt(number), file);
+          }
+        }
+      });
+    }
+    return segments;
+  }
+
+  /**
+   * Close the segment we are appending to and continue in a new one
+   * Entries in the closed segments are forced to disk first
+   * @return all segments before the new one
+   * @throws IOException if the segment could not be synced or created
+   */
+  public List<Path> rotate() throws IOException {
+    sync();
+    channel.close();
+    segment++;
+    channel = openSegment(directory, site, segment);
+    return new ArrayList<>(getSegments(directory, site).headMap(segment).values());
+  }
+
+  /**
+   * Append the values a transaction commits at this site
+   * They are buffered, and only durable after the next sync
+   * @param commitTimeStamp time the transaction commits at
+   * @param variables written by the transaction
+   * @param values committed for the variables, in the same order
+   * @throws IOException if the buffer could not be written out
+   */
+  public void append(int commitTimeStamp, List<Integer> variables, List<Integer> values)
+      throws IOException {
+    int entrySize = ENTRY_OVERHEAD + VALUE_SIZE * variables.size();
+    if(buffer.remaining() < entrySize) {
+      drain();
+      if(buffer.capacity() < entrySize) {
+        buffer = ByteBuffer.allocate(entrySize);
+      }
+    }
+    int start = buffer.position();
+    buffer.putInt(commitTimeStamp);
+    buffer.putInt(variables.size());
+    for(int i = 0; i < variables.size(); i++) {
+      buffer.putInt(variables.get(i));
+      buffer.putInt(values.get(i));
+    }
+    checksum.reset();
+    checksum.update(buffer.array(), start, buffer.position() - start);
+    buffer.putInt((int) checksum.getValue());
+    isDirty = true;
+  }
+
+  /**
+   * Write out buffered entries and force them to disk with one fsync
+   * Entries of all the transactions which committed since the last sync share it
+   * @throws IOException if the log could not be written or forced
+   */
+  public void sync() throws IOException {
+    if(!isDirty) {
+      return;
+    }
+    drain();
+    channel.force(false);
+    isDirty = false;
+  }
+
+  /**
+   * Sync and close the log
+   * @throws IOException if the log could not be written or closed
+   */
+  @Override
+  public void close() throws IOException {
+    sync();
+    channel.close();
+  }
+
+  /**
+   * Record that the logs of all sites are durable up to a time stamp
+   * It's written once every log has been forced, so a commit no later than it is on disk
+   * at every site it has written. The marker is written to a temporary file and moved over
+   * the old one, so a crash leaves either of them
+   * @param directory where logs are kept
+   * @param timeStamp every commit no later than it is durable
+   * @throws IOException if the marker could not be written
+   */
+  public static void writeDurableTimeStamp(Path directory, int timeStamp) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(MARKER_SIZE);
+    buffer.putInt(timeStamp);
+    CRC32 checksum = new CRC32();
+    checksum.update(buffer.array(), 0, Integer.BYTES);
+    buffer.putInt((int) checksum.getValue());
+    buffer.flip();
+
+    Path file = directory.resolve(DURABLE_MARKER);
+    Path temporaryFile = file.resolveSibling(DURABLE_MARKER + ".tmp");
+    try(FileChannel markerChannel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while(buffer.hasRemaining()) {
+        markerChannel.write(buffer);
+      }
+      markerChannel.force(true);
+    }
+    Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+    // not every platform allows to force a directory, the old marker is used if the move is lost
+    try(FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      directoryChannel.force(true);
+    } catch (IOException e) {
+      // commits after the old marker are dropped by the next replay, none of them is reported
+    }
+  }
+
+  /**
+   * Read the time stamp the logs of all sites are durable up to
+   * @param directory where logs are kept
+   * @return the time stamp, DataManager.INITIAL_TIME_STAMP if nothing has been made durable
+   * @throws IOException if the marker could not be read or is corrupted
+   */
+  public static int readDurableTimeStamp(Path directory) throws IOException {
+    Path file = directory.resolve(DURABLE_MARKER);
+    if(!Files.exists(file)) {
+      return DataManager.INITIAL_TIME_STAMP;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+    if(buffer.remaining() != MARKER_SIZE) {
+      throw new IOException(String.format("%s is truncated", file));
+    }
+    CRC32 checksum = new CRC32();
+    checksum.update(buffer.array(), 0, Integer.BYTES);
+    if(buffer.getInt(Integer.BYTES) != (int) checksum.getValue()) {
+      throw new IOException(String.format("%s is corrupted", file));
+    }
+    return buffer.getInt(0);
+  }
+
+  /**
+   * Replay all segments of the log of a site
+   * Entries are not skipped by time stamp, versions copied to a recovered site are logged
+   * with the time stamps they are committed at, which could be older than the checkpoint.
+   * The consumer decides which values are newer than the ones it has
+   * Commits after the durable time stamp might be missing at other sites, since the crash
+   * could come between the syncs of two sites. They have never been reported, so the log is
+   * cut at the first of them and later segments are deleted, copies of a variable at
+   * different sites then always agree
+   * @param directory where logs are kept
+   * @param site index of the site
+   * @param durableTimeStamp every site's log is durable up to it
+   * @param consumer given every committed value replayed
+   * @throws IOException if a segment could not be read
+   */
+  public static void replay(Path directory, int site, int durableTimeStamp,
+      RecordConsumer consumer) throws IOException {
+    boolean isCut = false;
+    for(Path file : getSegments(directory, site).values()) {
+      if(isCut) {
+        Files.delete(file);
+      } else {
+        isCut = replaySegment(file, durableTimeStamp, consumer);
+      }
+    }
+  }
+
+  /**
+   * Replay one segment from the beginning
+   * Reading stops at the first entry which is incomplete or fails its checksum, it's what
+   * a crash in the middle of a write leaves behind, or which is committed after the durable
+   * time stamp. The file is cut there
+   * @param file of the segment
+   * @param durableTimeStamp every site's log is durable up to it
+   * @param consumer given every committed value in the segment
+   * @return true if the segment is cut
+   * @throws IOException if the file could not be read
+   */
+  private static boolean replaySegment(Path file, int durableTimeStamp, RecordConsumer consumer)
+      throws IOException {
+    try(FileChannel readChannel = FileChannel.open(file, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      ByteBuffer content = ByteBuffer.allocate((int) readChannel.size());
+      while(content.hasRemaining() && readChannel.read(content) >= 0) {
+        // keep reading until the whole file is in memory
+      }
+      content.flip();
+      CRC32 checksum = new CRC32();
+      int validLength = 0;
+      while(content.remaining() >= ENTRY_OVERHEAD) {
+        int start = content.position();
+        int commitTimeStamp = content.getInt();
+        int count = content.getInt();
+        if(count < 0 || content.remaining() < (long) count * VALUE_SIZE + Integer.BYTES) {
+          break;
+        }
+        checksum.reset();
+        checksum.update(content.array(), start, 2 * Integer.BYTES + count * VALUE_SIZE);
+        int valuesStart = content.position();
+        content.position(valuesStart + count * VALUE_SIZE);
+        if(content.getInt() != (int) checksum.getValue() || commitTimeStamp > durableTimeStamp) {
+          break;
+        }
+        content.position(valuesStart);
+        for(int i = 0; i < count; i++) {
+          consumer.accept(commitTimeStamp, content.getInt(), content.getInt());
+        }
+        content.getInt();
+        validLength = content.position();
+      }
+      if(validLength < readChannel.size()) {
+        readChannel.truncate(validLength);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private static FileChannel openSegment(Path directory, int site, int segment)
+      throws IOException {
+    return FileChannel.open(directory.resolve(String.format("site-%s-%s.wal", site, segment)),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    while(buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}